@@ -18,7 +18,9 @@ package org.moe.librealsense.samples;
 
 import org.moe.natj.cxx.CxxRuntime;
 import org.moe.natj.cxx.StdException;
+import org.moe.natj.general.ptr.impl.PtrFactory;
 import org.moe.librealsense.RS;
+import org.moe.librealsense.pipeline.FrameSet;
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.GLAutoDrawable;
 import com.jogamp.opengl.GLCapabilities;
@@ -30,11 +32,8 @@ import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.nio.ByteBuffer;
-import java.nio.ShortBuffer;
 
-import static com.jogamp.opengl.GL.*;
-import static com.jogamp.opengl.GL2.GL_RED_SCALE;
-import static com.jogamp.opengl.GL2ES2.GL_RED;
+import static com.jogamp.opengl.GL2.*;
 
 public class Main extends Frame {
 
@@ -81,6 +80,7 @@ public class Main extends Frame {
 
         private final RS.context ctx;
         private final RS.device dev;
+        private final StreamTexture textures[] = new StreamTexture[4];
 
         private Window(RS.context ctx, RS.device dev) {
             super("librealsense tutorial #2");
@@ -134,6 +134,15 @@ public class Main extends Frame {
 
         @Override
         public void init(GLAutoDrawable drawable) {
+            GL2 gl = (GL2) drawable.getGL();
+
+            // One texture per stream, sized from the modes the device is actually streaming in
+            final RS.stream streams[] = {RS.stream.depth, RS.stream.color, RS.stream.infrared, RS.stream.infrared2};
+            for (int i = 0; i < streams.length; ++i) {
+                if (dev.is_stream_enabled(streams[i].value)) {
+                    textures[i] = new StreamTexture(gl, dev, streams[i]);
+                }
+            }
         }
 
         @Override
@@ -152,41 +161,170 @@ public class Main extends Frame {
             dev.wait_for_frames();
 
             gl.glClear(GL_COLOR_BUFFER_BIT);
-            gl.glPixelZoom(1, -1);
+            gl.glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
 
             // Display depth data by linearly mapping depth between 0 and 2 meters to the red channel
-            gl.glRasterPos2f(-1, 1);
             gl.glPixelTransferf(GL_RED_SCALE, 0xFFFF * dev.get_depth_scale() / 2.0f);
-            final ShortBuffer depthBuffer = ShortBuffer.wrap(dev.get_frame_data(RS.stream.depth.value).getShortPtr()
-                    .toShortArray(640 * 480));
-            gl.glDrawPixels(640, 480, GL_RED, GL_UNSIGNED_SHORT, depthBuffer);
+            upload(gl, 0);
             gl.glPixelTransferf(GL_RED_SCALE, 1.0f);
 
-            // Display color image as RGB triples
-            gl.glRasterPos2f(0, 1);
-            final ByteBuffer colorBuffer = ByteBuffer.wrap(dev.get_frame_data(RS.stream.color.value).getBytePtr()
-                    .toByteArray(640 * 480 * 3));
-            gl.glDrawPixels(640, 480, GL_RGB, GL_UNSIGNED_BYTE, colorBuffer);
-
-            // Display infrared image by mapping IR intensity to visible luminance
-            gl.glRasterPos2f(-1, 0);
-            final ByteBuffer irBuffer = ByteBuffer.wrap(dev.get_frame_data(RS.stream.infrared.value).getBytePtr()
-                    .toByteArray(640 * 480));
-            gl.glDrawPixels(640, 480, GL_LUMINANCE, GL_UNSIGNED_BYTE, irBuffer);
-
-            // Display second infrared image by mapping IR intensity to visible luminance
-            if (dev.is_stream_enabled(RS.stream.infrared2.value)) {
-                gl.glRasterPos2f(0, 0);
-                final ByteBuffer ir2Buffer = ByteBuffer.wrap(dev.get_frame_data(RS.stream.infrared2.value).getBytePtr()
-                        .toByteArray(640 * 480));
-                gl.glDrawPixels(640, 480, GL_LUMINANCE, GL_UNSIGNED_BYTE, ir2Buffer);
-            }
+            // Upload color as RGB triples and infrared as luminance
+            upload(gl, 1);
+            upload(gl, 2);
+            upload(gl, 3);
+
+            // Depth top left, color top right, infrared bottom left, second infrared bottom right
+            gl.glEnable(GL_TEXTURE_2D);
+            draw(gl, 0, -1, 1, 0, 0);
+            draw(gl, 1, 0, 1, 1, 0);
+            draw(gl, 2, -1, 0, 0, -1);
+            draw(gl, 3, 0, 0, 1, -1);
+            gl.glDisable(GL_TEXTURE_2D);
 
             gl.glFlush();
         }
 
+        private void upload(GL2 gl, int index) {
+            if (textures[index] != null) {
+                textures[index].upload(gl, dev);
+            }
+        }
+
+        private void draw(GL2 gl, int index, float left, float top, float right, float bottom) {
+            if (textures[index] != null) {
+                textures[index].draw(gl, left, top, right, bottom);
+            }
+        }
+
         @Override
         public void dispose(GLAutoDrawable drawable) {
+            GL2 gl = (GL2) drawable.getGL();
+            for (int i = 0; i < textures.length; ++i) {
+                if (textures[i] != null) {
+                    textures[i].dispose(gl);
+                    textures[i] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Texture fed from the native frame memory of a stream through two pixel buffer objects used in turn. Every frame,
+     * the texture is updated from the buffer filled the frame before while the new frame is copied into the other one,
+     * so the transfer of a buffer never has to finish before the copy into the next one. The texture shows the
+     * previous frame.
+     */
+    private static class StreamTexture {
+        private final RS.stream stream;
+        private final int width;
+        private final int height;
+        private final int size;
+        private final int format;
+        private final int type;
+        private final int texture[] = new int[1];
+        private final int buffers[] = new int[2];
+        private int next;     /* buffer holding the previous frame, the other one receives the current frame */
+        private boolean filled;
+
+        private StreamTexture(GL2 gl, RS.device dev, RS.stream stream) {
+            this.stream = stream;
+            this.width = dev.get_stream_width(stream.value);
+            this.height = dev.get_stream_height(stream.value);
+            final int streamFormat = dev.get_stream_format(stream.value);
+            this.size = FrameSet.frameSize(streamFormat, width, height);
+
+            switch (RS.format.fromValue(streamFormat)) {
+                case z16:
+                    format = GL_RED;
+                    type = GL_UNSIGNED_SHORT;
+                    break;
+                case y16:
+                    format = GL_LUMINANCE;
+                    type = GL_UNSIGNED_SHORT;
+                    break;
+                case y8:
+                    format = GL_LUMINANCE;
+                    type = GL_UNSIGNED_BYTE;
+                    break;
+                case rgb8:
+                    format = GL_RGB;
+                    type = GL_UNSIGNED_BYTE;
+                    break;
+                case bgr8:
+                    format = GL_BGR;
+                    type = GL_UNSIGNED_BYTE;
+                    break;
+                case rgba8:
+                    format = GL_RGBA;
+                    type = GL_UNSIGNED_BYTE;
+                    break;
+                case bgra8:
+                    format = GL_BGRA;
+                    type = GL_UNSIGNED_BYTE;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Cannot display " + stream + " in format " + streamFormat);
+            }
+
+            gl.glGenTextures(1, texture, 0);
+            gl.glBindTexture(GL_TEXTURE_2D, texture[0]);
+            gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+            gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+            gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+            gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+            gl.glTexImage2D(GL_TEXTURE_2D, 0, format == GL_LUMINANCE ? GL_LUMINANCE : GL_RGB, width, height, 0,
+                    format, type, null);
+            gl.glBindTexture(GL_TEXTURE_2D, 0);
+
+            gl.glGenBuffers(buffers.length, buffers, 0);
+            for (int buffer : buffers) {
+                gl.glBindBuffer(GL_PIXEL_UNPACK_BUFFER, buffer);
+                gl.glBufferData(GL_PIXEL_UNPACK_BUFFER, size, null, GL_STREAM_DRAW);
+            }
+            gl.glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+        }
+
+        private void upload(GL2 gl, RS.device dev) {
+            if (filled) {
+                // Sources from the bound buffer at offset 0 instead of client memory
+                gl.glBindBuffer(GL_PIXEL_UNPACK_BUFFER, buffers[next]);
+                gl.glBindTexture(GL_TEXTURE_2D, texture[0]);
+                gl.glTexSubImage2D(GL_TEXTURE_2D, 0, 0, 0, width, height, format, type, 0L);
+                gl.glBindTexture(GL_TEXTURE_2D, 0);
+            }
+
+            // Orphan the storage of the other buffer, the transfer started from it last frame may still be running
+            gl.glBindBuffer(GL_PIXEL_UNPACK_BUFFER, buffers[next ^ 1]);
+            gl.glBufferData(GL_PIXEL_UNPACK_BUFFER, size, null, GL_STREAM_DRAW);
+            final ByteBuffer mapped = gl.glMapBuffer(GL_PIXEL_UNPACK_BUFFER, GL_WRITE_ONLY);
+            filled = mapped != null;
+            if (filled) {
+                RS.memcpy(PtrFactory.newBytePtr(mapped), dev.get_frame_data(stream.value), size);
+                gl.glUnmapBuffer(GL_PIXEL_UNPACK_BUFFER);
+            }
+            gl.glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+            next ^= 1;
+        }
+
+        private void draw(GL2 gl, float left, float top, float right, float bottom) {
+            // The first image row is the top of the quad
+            gl.glBindTexture(GL_TEXTURE_2D, texture[0]);
+            gl.glBegin(GL_QUADS);
+            gl.glTexCoord2f(0, 0);
+            gl.glVertex2f(left, top);
+            gl.glTexCoord2f(1, 0);
+            gl.glVertex2f(right, top);
+            gl.glTexCoord2f(1, 1);
+            gl.glVertex2f(right, bottom);
+            gl.glTexCoord2f(0, 1);
+            gl.glVertex2f(left, bottom);
+            gl.glEnd();
+            gl.glBindTexture(GL_TEXTURE_2D, 0);
+        }
+
+        private void dispose(GL2 gl) {
+            gl.glDeleteBuffers(buffers.length, buffers, 0);
+            gl.glDeleteTextures(1, texture, 0);
         }
     }
 
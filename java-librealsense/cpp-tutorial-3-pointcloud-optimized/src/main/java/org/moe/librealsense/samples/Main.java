@@ -19,6 +19,8 @@ package org.moe.librealsense.samples;
 import org.moe.natj.cxx.CxxRuntime;
 import org.moe.natj.general.ptr.ConstBytePtr;
 import org.moe.natj.general.ptr.ConstCharPtr;
+import org.moe.librealsense.Extrinsics;
+import org.moe.librealsense.Intrinsics;
 import org.moe.librealsense.RS;
 import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.GLAutoDrawable;
@@ -0,0 +1,55 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+// Bulk readers copying whole calibration structs into caller provided memory with a single call, used by the Java
+// binding to avoid one JNI crossing per struct field.
+
+#ifndef LIBREALSENSE_RS_BULK_HPP
+#define LIBREALSENSE_RS_BULK_HPP
+
+#include "rs.hpp"
+
+namespace rs_bulk
+{
+    static_assert(sizeof(rs_intrinsics) == 48, "unexpected rs_intrinsics layout");
+    static_assert(sizeof(rs_extrinsics) == 48, "unexpected rs_extrinsics layout");
+
+    /// copy the intrinsic camera parameters of a stream into a block of memory
+    /// \param[in] device  the device to query
+    /// \param[in] stream  the stream whose parameters to retrieve
+    /// \param[out] intrin at least sizeof(rs_intrinsics) bytes receiving the struct
+    inline void read_stream_intrinsics(const rs::device * device, rs::stream stream, void * intrin)
+    {
+        rs_error * e = nullptr;
+        rs_get_stream_intrinsics((const rs_device *)device, (rs_stream)stream, (rs_intrinsics *)intrin, &e);
+        rs::error::handle(e);
+    }
+
+    /// copy the extrinsic transformation between the viewpoints of two streams into a block of memory
+    /// \param[in] device       the device to query
+    /// \param[in] from_stream  the stream whose coordinate space to transform from
+    /// \param[in] to_stream    the stream whose coordinate space to transform to
+    /// \param[out] extrin      at least sizeof(rs_extrinsics) bytes receiving the struct
+    inline void read_extrinsics(const rs::device * device, rs::stream from_stream, rs::stream to_stream, void * extrin)
+    {
+        rs_error * e = nullptr;
+        rs_get_device_extrinsics((const rs_device *)device, (rs_stream)from_stream, (rs_stream)to_stream, (rs_extrinsics *)extrin, &e);
+        rs::error::handle(e);
+    }
+}
+
+#endif
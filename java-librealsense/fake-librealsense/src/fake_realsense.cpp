@@ -0,0 +1,850 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+// Stand-in for librealsense implementing the C API of rs.h without any hardware. Every context reports the same set
+// of fake R200-like devices which stream synthetic frames paced by the requested framerate.
+//
+// Environment variables:
+//   RS_FAKE_DEVICE_COUNT  number of devices, default 1
+//   RS_FAKE_FREE_RUN      when set to 1, rs_wait_for_frames returns immediately with a new frame set instead of
+//                         waiting for the next frame time, which is useful to measure call overhead
+
+#include <rs.h>
+
+#include <algorithm>
+#include <chrono>
+#include <cmath>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <memory>
+#include <mutex>
+#include <sstream>
+#include <stdexcept>
+#include <string>
+#include <thread>
+#include <vector>
+
+struct rs_error
+{
+    std::string message;
+    std::string function;
+    std::string args;
+};
+
+namespace
+{
+    const int NATIVE_STREAM_COUNT = RS_STREAM_POINTS;
+
+    struct stream_mode
+    {
+        int width, height;
+        rs_format format;
+        int framerate;
+    };
+
+    // Modes of the native streams, roughly those of an R200
+    const stream_mode depth_modes[] = {
+        {640, 480, RS_FORMAT_Z16, 30}, {640, 480, RS_FORMAT_Z16, 60},
+        {480, 360, RS_FORMAT_Z16, 30}, {480, 360, RS_FORMAT_Z16, 60}, {480, 360, RS_FORMAT_Z16, 90},
+        {320, 240, RS_FORMAT_Z16, 30}, {320, 240, RS_FORMAT_Z16, 60}, {320, 240, RS_FORMAT_Z16, 90},
+    };
+    const stream_mode color_modes[] = {
+        {1920, 1080, RS_FORMAT_RGB8, 30}, {1920, 1080, RS_FORMAT_BGR8, 30}, {1920, 1080, RS_FORMAT_RGBA8, 30},
+        {1920, 1080, RS_FORMAT_BGRA8, 30}, {1920, 1080, RS_FORMAT_YUYV, 30},
+        {640, 480, RS_FORMAT_RGB8, 30}, {640, 480, RS_FORMAT_BGR8, 30}, {640, 480, RS_FORMAT_RGBA8, 30},
+        {640, 480, RS_FORMAT_BGRA8, 30}, {640, 480, RS_FORMAT_YUYV, 30},
+        {640, 480, RS_FORMAT_RGB8, 60}, {640, 480, RS_FORMAT_BGR8, 60}, {640, 480, RS_FORMAT_RGBA8, 60},
+        {640, 480, RS_FORMAT_BGRA8, 60}, {640, 480, RS_FORMAT_YUYV, 60},
+    };
+    const stream_mode infrared_modes[] = {
+        {640, 480, RS_FORMAT_Y8, 30}, {640, 480, RS_FORMAT_Y16, 30}, {640, 480, RS_FORMAT_Y8, 60},
+        {480, 360, RS_FORMAT_Y8, 30}, {480, 360, RS_FORMAT_Y8, 60}, {480, 360, RS_FORMAT_Y8, 90},
+        {320, 240, RS_FORMAT_Y8, 30}, {320, 240, RS_FORMAT_Y8, 60}, {320, 240, RS_FORMAT_Y8, 90},
+    };
+
+    // Preset mode per native stream, indexed [preset][stream]
+    const stream_mode presets[RS_PRESET_COUNT][NATIVE_STREAM_COUNT] = {
+        {{480, 360, RS_FORMAT_Z16, 60}, {640, 480, RS_FORMAT_RGB8, 60}, {480, 360, RS_FORMAT_Y8, 60}, {480, 360, RS_FORMAT_Y8, 60}},
+        {{640, 480, RS_FORMAT_Z16, 30}, {1920, 1080, RS_FORMAT_RGB8, 30}, {640, 480, RS_FORMAT_Y8, 30}, {640, 480, RS_FORMAT_Y8, 30}},
+        {{320, 240, RS_FORMAT_Z16, 90}, {640, 480, RS_FORMAT_RGB8, 60}, {320, 240, RS_FORMAT_Y8, 90}, {320, 240, RS_FORMAT_Y8, 90}},
+    };
+
+    // Native stream whose viewpoint and resolution a stream shares, for synthetic streams the stream they are
+    // aligned to
+    const rs_stream viewpoint_of[RS_STREAM_COUNT] = {
+        RS_STREAM_DEPTH, RS_STREAM_COLOR, RS_STREAM_INFRARED, RS_STREAM_INFRARED2,
+        RS_STREAM_DEPTH,     // points
+        RS_STREAM_COLOR,     // rectified color
+        RS_STREAM_DEPTH,     // color aligned to depth
+        RS_STREAM_DEPTH,     // infrared2 aligned to depth
+        RS_STREAM_COLOR,     // depth aligned to color
+        RS_STREAM_COLOR,     // depth aligned to rectified color
+        RS_STREAM_INFRARED2, // depth aligned to infrared2
+    };
+
+    // Native stream whose pixels a stream carries
+    const rs_stream content_of[RS_STREAM_COUNT] = {
+        RS_STREAM_DEPTH, RS_STREAM_COLOR, RS_STREAM_INFRARED, RS_STREAM_INFRARED2,
+        RS_STREAM_DEPTH, RS_STREAM_COLOR, RS_STREAM_COLOR, RS_STREAM_INFRARED2,
+        RS_STREAM_DEPTH, RS_STREAM_DEPTH, RS_STREAM_DEPTH,
+    };
+
+    // Position of each native camera relative to the depth camera, in meters, rotations are identity
+    const float camera_position[NATIVE_STREAM_COUNT][3] = {
+        {0, 0, 0}, {0.025f, 0, 0}, {0, 0, 0}, {0.07f, 0, 0},
+    };
+
+    struct option_range
+    {
+        double min, max, step, def;
+    };
+
+    int bytes_per_pixel(rs_format format)
+    {
+        switch (format)
+        {
+        case RS_FORMAT_Z16: case RS_FORMAT_DISPARITY16: case RS_FORMAT_YUYV: case RS_FORMAT_Y16: return 2;
+        case RS_FORMAT_XYZ32F: return 12;
+        case RS_FORMAT_RGB8: case RS_FORMAT_BGR8: return 3;
+        case RS_FORMAT_RGBA8: case RS_FORMAT_BGRA8: return 4;
+        case RS_FORMAT_Y8: return 1;
+        default: return 0;
+        }
+    }
+
+    std::string make_args() { return std::string(); }
+
+    template<class T, class... U> std::string make_args(const T & first, const U &... rest)
+    {
+        std::ostringstream ss;
+        ss << first;
+        const std::string tail = make_args(rest...);
+        if (!tail.empty()) ss << ", " << tail;
+        return ss.str();
+    }
+
+    void fail(rs_error ** error, const char * function, const std::string & args, const std::string & message)
+    {
+        if (error) *error = new rs_error{message, function, args};
+    }
+
+    void check_stream(rs_stream stream)
+    {
+        if (stream < 0 || stream >= RS_STREAM_COUNT) throw std::runtime_error("bad enum value for argument \"stream\"");
+    }
+
+    void check_native(rs_stream stream)
+    {
+        check_stream(stream);
+        if (stream >= NATIVE_STREAM_COUNT) throw std::runtime_error("argument \"stream\" must be a native stream");
+    }
+
+    void check_option(rs_option option)
+    {
+        if (option < 0 || option >= RS_OPTION_COUNT) throw std::runtime_error("bad enum value for argument \"option\"");
+    }
+
+    // Severity below which nothing is logged, and the optional log file
+    rs_log_severity console_severity = RS_LOG_SEVERITY_NONE;
+    rs_log_severity file_severity = RS_LOG_SEVERITY_NONE;
+    FILE * log_file = nullptr;
+    std::mutex log_mutex;
+
+    void log(rs_log_severity severity, const std::string & message)
+    {
+        std::lock_guard<std::mutex> lock(log_mutex);
+        static const char * names[] = {"DEBUG", "INFO", "WARN", "ERROR", "FATAL"};
+        if (severity >= console_severity) std::fprintf(stderr, " %s: %s\n", names[severity], message.c_str());
+        if (log_file && severity >= file_severity)
+        {
+            std::fprintf(log_file, " %s: %s\n", names[severity], message.c_str());
+            std::fflush(log_file);
+        }
+    }
+}
+
+struct rs_device
+{
+    typedef std::chrono::steady_clock clock;
+
+    int index;
+    std::string name, serial, firmware_version;
+    mutable std::mutex mutex;
+
+    bool enabled[NATIVE_STREAM_COUNT];
+    stream_mode mode[NATIVE_STREAM_COUNT];
+    bool streaming;
+    bool free_run;
+
+    option_range ranges[RS_OPTION_COUNT];
+    bool supported[RS_OPTION_COUNT];
+    double values[RS_OPTION_COUNT];
+
+    clock::time_point start_time;
+    long long frame_number;
+    int timestamp;
+    std::vector<unsigned char> frames[RS_STREAM_COUNT];
+    bool frame_ready[RS_STREAM_COUNT];
+
+    explicit rs_device(int index) : index(index), streaming(false), frame_number(-1), timestamp(0)
+    {
+        name = "Intel RealSense R200 (fake)";
+        char buffer[32];
+        std::snprintf(buffer, sizeof(buffer), "FAKE%08d", index);
+        serial = buffer;
+        firmware_version = "1.0.72.06";
+        const char * env = std::getenv("RS_FAKE_FREE_RUN");
+        free_run = env && std::atoi(env) != 0;
+
+        for (int s = 0; s < NATIVE_STREAM_COUNT; ++s) enabled[s] = false;
+        for (int s = 0; s < RS_STREAM_COUNT; ++s) frame_ready[s] = false;
+        for (int o = 0; o < RS_OPTION_COUNT; ++o)
+        {
+            // Color controls and the R200 controls are supported
+            supported[o] = o <= RS_OPTION_COLOR_ENABLE_AUTO_WHITE_BALANCE || o >= RS_OPTION_R200_LR_AUTO_EXPOSURE_ENABLED;
+            ranges[o] = {0, 255, 1, 128};
+        }
+        ranges[RS_OPTION_COLOR_ENABLE_AUTO_EXPOSURE] = {0, 1, 1, 1};
+        ranges[RS_OPTION_COLOR_ENABLE_AUTO_WHITE_BALANCE] = {0, 1, 1, 1};
+        ranges[RS_OPTION_COLOR_WHITE_BALANCE] = {2800, 6500, 10, 4600};
+        ranges[RS_OPTION_COLOR_EXPOSURE] = {-8, 0, 1, -6};
+        ranges[RS_OPTION_R200_LR_AUTO_EXPOSURE_ENABLED] = {0, 1, 1, 0};
+        ranges[RS_OPTION_R200_LR_GAIN] = {100, 1600, 1, 400};
+        ranges[RS_OPTION_R200_LR_EXPOSURE] = {1, 164, 1, 164};
+        ranges[RS_OPTION_R200_EMITTER_ENABLED] = {0, 1, 1, 1};
+        ranges[RS_OPTION_R200_DEPTH_UNITS] = {1, 2147483647, 1, 1000};
+        ranges[RS_OPTION_R200_DEPTH_CLAMP_MIN] = {0, 65535, 1, 0};
+        ranges[RS_OPTION_R200_DEPTH_CLAMP_MAX] = {0, 65535, 1, 65535};
+        ranges[RS_OPTION_R200_DISPARITY_MULTIPLIER] = {1, 1000, 1, 32};
+        ranges[RS_OPTION_R200_DISPARITY_SHIFT] = {0, 512, 1, 0};
+        for (int o = 0; o < RS_OPTION_COUNT; ++o) values[o] = ranges[o].def;
+    }
+
+    void require_supported(rs_option option) const
+    {
+        check_option(option);
+        if (!supported[option]) throw std::runtime_error(std::string("option not supported by this device - ") + rs_option_to_string(option));
+    }
+
+    bool is_enabled(rs_stream stream) const
+    {
+        return enabled[content_of[stream]] && enabled[viewpoint_of[stream]];
+    }
+
+    // Mode of any stream, synthetic streams have the resolution of their viewpoint and the format of their content
+    stream_mode get_mode(rs_stream stream) const
+    {
+        check_stream(stream);
+        if (!is_enabled(stream)) throw std::runtime_error(std::string("stream not enabled - ") + rs_stream_to_string(stream));
+        stream_mode m = mode[viewpoint_of[stream]];
+        m.format = stream == RS_STREAM_POINTS ? RS_FORMAT_XYZ32F : mode[content_of[stream]].format;
+        return m;
+    }
+
+    rs_intrinsics get_intrinsics(rs_stream stream) const
+    {
+        const stream_mode m = get_mode(stream);
+        rs_intrinsics intrin;
+        intrin.width = m.width;
+        intrin.height = m.height;
+        intrin.ppx = m.width * 0.5f;
+        intrin.ppy = m.height * 0.5f;
+        // Roughly 70 degrees of horizontal field of view
+        intrin.fx = intrin.fy = m.width * 0.7f;
+        intrin.model = stream == RS_STREAM_COLOR ? RS_DISTORTION_MODIFIED_BROWN_CONRADY : RS_DISTORTION_NONE;
+        for (int i = 0; i < 5; ++i) intrin.coeffs[i] = 0;
+        return intrin;
+    }
+
+    double get_depth_scale() const
+    {
+        return values[RS_OPTION_R200_DEPTH_UNITS] * 1e-6;
+    }
+
+    void enable(rs_stream stream, const stream_mode & request)
+    {
+        check_native(stream);
+        if (streaming) throw std::runtime_error("device is streaming");
+        for (const stream_mode & m : modes(stream))
+        {
+            if ((request.width == 0 || request.width == m.width) && (request.height == 0 || request.height == m.height)
+                && (request.format == RS_FORMAT_ANY || request.format == m.format)
+                && (request.framerate == 0 || request.framerate == m.framerate))
+            {
+                enabled[stream] = true;
+                mode[stream] = m;
+                return;
+            }
+        }
+        throw std::runtime_error("requested stream mode not supported");
+    }
+
+    static std::vector<stream_mode> modes(rs_stream stream)
+    {
+        switch (stream)
+        {
+        case RS_STREAM_DEPTH: return std::vector<stream_mode>(std::begin(depth_modes), std::end(depth_modes));
+        case RS_STREAM_COLOR: return std::vector<stream_mode>(std::begin(color_modes), std::end(color_modes));
+        case RS_STREAM_INFRARED: case RS_STREAM_INFRARED2: return std::vector<stream_mode>(std::begin(infrared_modes), std::end(infrared_modes));
+        default: return std::vector<stream_mode>();
+        }
+    }
+
+    void start()
+    {
+        if (streaming) throw std::runtime_error("device is already streaming");
+        bool any = false;
+        for (int s = 0; s < NATIVE_STREAM_COUNT; ++s) any |= enabled[s];
+        if (!any) throw std::runtime_error("no streams are enabled");
+        streaming = true;
+        start_time = clock::now();
+        frame_number = -1;
+        for (int s = 0; s < RS_STREAM_COUNT; ++s) frame_ready[s] = false;
+        log(RS_LOG_SEVERITY_INFO, "started streaming on " + serial);
+    }
+
+    // Framerate of the fastest enabled stream, which paces the frame sets
+    int framerate() const
+    {
+        int rate = 1;
+        for (int s = 0; s < NATIVE_STREAM_COUNT; ++s) if (enabled[s]) rate = std::max(rate, mode[s].framerate);
+        return rate;
+    }
+
+    // Frame number that is due at the current time
+    long long due_frame() const
+    {
+        const auto elapsed = std::chrono::duration_cast<std::chrono::microseconds>(clock::now() - start_time).count();
+        return elapsed * framerate() / 1000000;
+    }
+
+    clock::time_point frame_time(long long number) const
+    {
+        return start_time + std::chrono::microseconds(number * 1000000 / framerate());
+    }
+
+    void advance(long long number)
+    {
+        frame_number = number;
+        timestamp = (int)(number * 1000 / framerate());
+        for (int s = 0; s < RS_STREAM_COUNT; ++s) frame_ready[s] = false;
+    }
+
+    const void * get_frame(rs_stream stream)
+    {
+        const stream_mode m = get_mode(stream);
+        if (frame_number < 0) throw std::runtime_error("no frames received yet");
+        std::vector<unsigned char> & data = frames[stream];
+        if (!frame_ready[stream])
+        {
+            data.resize((size_t)m.width * m.height * bytes_per_pixel(m.format));
+            render(stream, m, data.data());
+            frame_ready[stream] = true;
+        }
+        return data.data();
+    }
+
+    // Scene depth in meters seen from a camera at (origin_x, 0, 0) through normalized image coordinates: a wall at
+    // 3 m, a floor plane 1 m below the cameras and a sphere moving sideways in front of them
+    float scene_depth(float origin_x, float x, float y) const
+    {
+        float depth = 3.0f;
+        if (y > 0) depth = std::min(depth, 1.0f / y);
+        const float t = frame_number / (float)framerate();
+        const float cx = 0.5f * std::sin(t) - origin_x, cy = 0.1f, cz = 1.5f, r = 0.3f;
+        // Ray (x, y, 1) against the sphere
+        const float a = x * x + y * y + 1, b = -(x * cx + y * cy + cz), c = cx * cx + cy * cy + cz * cz - r * r;
+        const float disc = b * b - a * c;
+        if (disc >= 0)
+        {
+            const float hit = (-b - std::sqrt(disc)) / a;
+            if (hit > 0) depth = std::min(depth, hit);
+        }
+        return depth;
+    }
+
+    void render(rs_stream stream, const stream_mode & m, unsigned char * out) const
+    {
+        const rs_intrinsics intrin = get_intrinsics(viewpoint_of[stream]);
+        const float origin_x = camera_position[viewpoint_of[stream]][0];
+        const double scale = get_depth_scale();
+        const int shift = (int)(frame_number * 4);
+
+        for (int y = 0; y < m.height; ++y)
+        {
+            for (int x = 0; x < m.width; ++x)
+            {
+                const int i = y * m.width + x;
+                const float nx = (x - intrin.ppx) / intrin.fx, ny = (y - intrin.ppy) / intrin.fy;
+                const float z = scene_depth(origin_x, nx, ny);
+                const unsigned short depth_value = (unsigned short)std::min(65535.0, z / scale);
+                const unsigned char intensity = (unsigned char)(((x / 8 + y / 8) & 1 ? 200 : 60) * std::min(1.0f, 1.5f / z));
+
+                switch (m.format)
+                {
+                case RS_FORMAT_Z16:
+                    reinterpret_cast<unsigned short *>(out)[i] = (x ^ y ^ shift) % 97 == 0 ? 0 : depth_value;
+                    break;
+                case RS_FORMAT_XYZ32F:
+                {
+                    float * p = reinterpret_cast<float *>(out) + i * 3;
+                    const float d = depth_value * (float)scale;
+                    p[0] = nx * d;
+                    p[1] = ny * d;
+                    p[2] = d;
+                    break;
+                }
+                case RS_FORMAT_Y8:
+                    out[i] = intensity;
+                    break;
+                case RS_FORMAT_Y16:
+                    reinterpret_cast<unsigned short *>(out)[i] = (unsigned short)(intensity << 8);
+                    break;
+                case RS_FORMAT_YUYV:
+                    out[i * 2] = (unsigned char)((x + shift) * 255 / m.width);
+                    out[i * 2 + 1] = (unsigned char)(x & 1 ? 128 + y * 64 / m.height : 128 + x * 64 / m.width);
+                    break;
+                default:
+                {
+                    // Color gradient scrolling over time, tinted by distance
+                    const unsigned char r = (unsigned char)((x + shift) * 255 / m.width);
+                    const unsigned char g = (unsigned char)(y * 255 / m.height);
+                    const unsigned char b = (unsigned char)(255 * std::min(1.0f, 1.0f / z));
+                    const int bpp = bytes_per_pixel(m.format);
+                    unsigned char * p = out + (size_t)i * bpp;
+                    const bool bgr = m.format == RS_FORMAT_BGR8 || m.format == RS_FORMAT_BGRA8;
+                    p[0] = bgr ? b : r;
+                    p[1] = g;
+                    p[2] = bgr ? r : b;
+                    if (bpp == 4) p[3] = 255;
+                    break;
+                }
+                }
+            }
+        }
+    }
+};
+
+struct rs_context
+{
+    std::vector<std::unique_ptr<rs_device>> devices;
+
+    rs_context()
+    {
+        const char * env = std::getenv("RS_FAKE_DEVICE_COUNT");
+        const int count = env ? std::max(0, std::atoi(env)) : 1;
+        for (int i = 0; i < count; ++i) devices.emplace_back(new rs_device(i));
+    }
+};
+
+// Every entry point catches exceptions and reports them through the error out parameter, like librealsense
+#define BEGIN_API_CALL try
+#define END_API_CALL(R, ...) catch (const std::exception & e) { fail(error, __FUNCTION__, make_args(__VA_ARGS__), e.what()); return R; } \
+                             catch (...) { fail(error, __FUNCTION__, make_args(__VA_ARGS__), "unknown error"); return R; }
+#define VALIDATE(ARG) if (!(ARG)) throw std::runtime_error("null pointer passed for argument \"" #ARG "\"");
+#define LOCK(DEVICE) std::lock_guard<std::mutex> lock((DEVICE)->mutex)
+
+rs_context * rs_create_context(int api_version, rs_error ** error) BEGIN_API_CALL
+{
+    if (api_version != RS_API_VERSION) throw std::runtime_error("api version mismatch");
+    return new rs_context();
+}
+END_API_CALL(nullptr, api_version)
+
+void rs_delete_context(rs_context * context, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(context);
+    delete context;
+}
+END_API_CALL(, context)
+
+int rs_get_device_count(const rs_context * context, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(context);
+    return (int)context->devices.size();
+}
+END_API_CALL(0, context)
+
+rs_device * rs_get_device(rs_context * context, int index, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(context);
+    if (index < 0 || index >= (int)context->devices.size()) throw std::runtime_error("out of range value for argument \"index\"");
+    return context->devices[index].get();
+}
+END_API_CALL(nullptr, context, index)
+
+const char * rs_get_device_name(const rs_device * device, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    return device->name.c_str();
+}
+END_API_CALL(nullptr, device)
+
+const char * rs_get_device_serial(const rs_device * device, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    return device->serial.c_str();
+}
+END_API_CALL(nullptr, device)
+
+const char * rs_get_device_firmware_version(const rs_device * device, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    return device->firmware_version.c_str();
+}
+END_API_CALL(nullptr, device)
+
+void rs_get_device_extrinsics(const rs_device * device, rs_stream from_stream, rs_stream to_stream, rs_extrinsics * extrin, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    VALIDATE(extrin);
+    check_stream(from_stream);
+    check_stream(to_stream);
+    const float * from = camera_position[viewpoint_of[from_stream]];
+    const float * to = camera_position[viewpoint_of[to_stream]];
+    for (int i = 0; i < 9; ++i) extrin->rotation[i] = i % 4 == 0 ? 1.0f : 0.0f;
+    for (int i = 0; i < 3; ++i) extrin->translation[i] = from[i] - to[i];
+}
+END_API_CALL(, device, from_stream, to_stream, extrin)
+
+float rs_get_device_depth_scale(const rs_device * device, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    LOCK(device);
+    return (float)device->get_depth_scale();
+}
+END_API_CALL(0.0f, device)
+
+int rs_device_supports_option(const rs_device * device, rs_option option, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    check_option(option);
+    return device->supported[option] ? 1 : 0;
+}
+END_API_CALL(0, device, option)
+
+int rs_get_stream_mode_count(const rs_device * device, rs_stream stream, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    check_stream(stream);
+    return (int)rs_device::modes(stream).size();
+}
+END_API_CALL(0, device, stream)
+
+void rs_get_stream_mode(const rs_device * device, rs_stream stream, int index, int * width, int * height, rs_format * format, int * framerate, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    check_stream(stream);
+    const std::vector<stream_mode> modes = rs_device::modes(stream);
+    if (index < 0 || index >= (int)modes.size()) throw std::runtime_error("out of range value for argument \"index\"");
+    if (width) *width = modes[index].width;
+    if (height) *height = modes[index].height;
+    if (format) *format = modes[index].format;
+    if (framerate) *framerate = modes[index].framerate;
+}
+END_API_CALL(, device, stream, index, width, height, format, framerate)
+
+void rs_enable_stream(rs_device * device, rs_stream stream, int width, int height, rs_format format, int framerate, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    if (width < 0) throw std::runtime_error("out of range value for argument \"width\"");
+    if (height < 0) throw std::runtime_error("out of range value for argument \"height\"");
+    if (format < 0 || format >= RS_FORMAT_COUNT) throw std::runtime_error("bad enum value for argument \"format\"");
+    if (framerate < 0) throw std::runtime_error("out of range value for argument \"framerate\"");
+    LOCK(device);
+    device->enable(stream, {width, height, format, framerate});
+}
+END_API_CALL(, device, stream, width, height, format, framerate)
+
+void rs_enable_stream_preset(rs_device * device, rs_stream stream, rs_preset preset, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    check_native(stream);
+    if (preset < 0 || preset >= RS_PRESET_COUNT) throw std::runtime_error("bad enum value for argument \"preset\"");
+    LOCK(device);
+    device->enable(stream, presets[preset][stream]);
+}
+END_API_CALL(, device, stream, preset)
+
+void rs_disable_stream(rs_device * device, rs_stream stream, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    check_native(stream);
+    LOCK(device);
+    if (device->streaming) throw std::runtime_error("device is streaming");
+    device->enabled[stream] = false;
+}
+END_API_CALL(, device, stream)
+
+int rs_is_stream_enabled(const rs_device * device, rs_stream stream, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    check_stream(stream);
+    LOCK(device);
+    return device->is_enabled(stream) ? 1 : 0;
+}
+END_API_CALL(0, device, stream)
+
+int rs_get_stream_width(const rs_device * device, rs_stream stream, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    LOCK(device);
+    return device->get_mode(stream).width;
+}
+END_API_CALL(0, device, stream)
+
+int rs_get_stream_height(const rs_device * device, rs_stream stream, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    LOCK(device);
+    return device->get_mode(stream).height;
+}
+END_API_CALL(0, device, stream)
+
+rs_format rs_get_stream_format(const rs_device * device, rs_stream stream, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    LOCK(device);
+    return device->get_mode(stream).format;
+}
+END_API_CALL(RS_FORMAT_ANY, device, stream)
+
+int rs_get_stream_framerate(const rs_device * device, rs_stream stream, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    LOCK(device);
+    return device->get_mode(stream).framerate;
+}
+END_API_CALL(0, device, stream)
+
+void rs_get_stream_intrinsics(const rs_device * device, rs_stream stream, rs_intrinsics * intrin, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    VALIDATE(intrin);
+    LOCK(device);
+    *intrin = device->get_intrinsics(stream);
+}
+END_API_CALL(, device, stream, intrin)
+
+void rs_start_device(rs_device * device, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    LOCK(device);
+    device->start();
+}
+END_API_CALL(, device)
+
+void rs_stop_device(rs_device * device, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    LOCK(device);
+    if (!device->streaming) throw std::runtime_error("device is not streaming");
+    device->streaming = false;
+    log(RS_LOG_SEVERITY_INFO, "stopped streaming on " + device->serial);
+}
+END_API_CALL(, device)
+
+int rs_is_device_streaming(const rs_device * device, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    LOCK(device);
+    return device->streaming ? 1 : 0;
+}
+END_API_CALL(0, device)
+
+void rs_get_device_option_range(rs_device * device, rs_option option, double * min, double * max, double * step, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    device->require_supported(option);
+    const option_range & range = device->ranges[option];
+    if (min) *min = range.min;
+    if (max) *max = range.max;
+    if (step) *step = range.step;
+}
+END_API_CALL(, device, option, min, max, step)
+
+void rs_get_device_options(rs_device * device, const rs_option * options, int count, double * values, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    VALIDATE(options);
+    VALIDATE(values);
+    if (count < 0) throw std::runtime_error("out of range value for argument \"count\"");
+    LOCK(device);
+    for (int i = 0; i < count; ++i) device->require_supported(options[i]);
+    for (int i = 0; i < count; ++i) values[i] = device->values[options[i]];
+}
+END_API_CALL(, device, options, count, values)
+
+void rs_set_device_options(rs_device * device, const rs_option * options, int count, const double * values, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    VALIDATE(options);
+    VALIDATE(values);
+    if (count < 0) throw std::runtime_error("out of range value for argument \"count\"");
+    LOCK(device);
+    for (int i = 0; i < count; ++i)
+    {
+        device->require_supported(options[i]);
+        const option_range & range = device->ranges[options[i]];
+        if (values[i] < range.min || values[i] > range.max) throw std::runtime_error(std::string("value out of range for option ") + rs_option_to_string(options[i]));
+    }
+    for (int i = 0; i < count; ++i) device->values[options[i]] = values[i];
+}
+END_API_CALL(, device, options, count, values)
+
+double rs_get_device_option(rs_device * device, rs_option option, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    double value = 0;
+    rs_get_device_options(device, &option, 1, &value, error);
+    return value;
+}
+END_API_CALL(0.0, device, option)
+
+void rs_set_device_option(rs_device * device, rs_option option, double value, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    rs_set_device_options(device, &option, 1, &value, error);
+}
+END_API_CALL(, device, option, value)
+
+void rs_wait_for_frames(rs_device * device, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    std::unique_lock<std::mutex> lock(device->mutex);
+    if (!device->streaming) throw std::runtime_error("device is not streaming");
+    const long long next = device->frame_number + 1;
+    if (!device->free_run)
+    {
+        // Sleep without holding the lock so other calls can proceed meanwhile
+        const rs_device::clock::time_point due = device->frame_time(next);
+        lock.unlock();
+        std::this_thread::sleep_until(due);
+        lock.lock();
+        if (!device->streaming) throw std::runtime_error("device stopped streaming");
+    }
+    device->advance(device->free_run ? next : std::max(next, device->due_frame()));
+}
+END_API_CALL(, device)
+
+int rs_poll_for_frames(rs_device * device, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    LOCK(device);
+    if (!device->streaming) throw std::runtime_error("device is not streaming");
+    const long long due = device->free_run ? device->frame_number + 1 : device->due_frame();
+    if (due <= device->frame_number) return 0;
+    device->advance(due);
+    return 1;
+}
+END_API_CALL(0, device)
+
+int rs_get_frame_timestamp(const rs_device * device, rs_stream stream, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    LOCK(device);
+    device->get_mode(stream);
+    return device->timestamp;
+}
+END_API_CALL(0, device, stream)
+
+const void * rs_get_frame_data(const rs_device * device, rs_stream stream, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(device);
+    LOCK(device);
+    // Frames are rendered on first access, which is logically const
+    return const_cast<rs_device *>(device)->get_frame(stream);
+}
+END_API_CALL(nullptr, device, stream)
+
+const char * rs_get_failed_function(const rs_error * error) { return error ? error->function.c_str() : nullptr; }
+const char * rs_get_failed_args(const rs_error * error) { return error ? error->args.c_str() : nullptr; }
+const char * rs_get_error_message(const rs_error * error) { return error ? error->message.c_str() : nullptr; }
+void rs_free_error(rs_error * error) { delete error; }
+
+const char * rs_stream_to_string(rs_stream stream)
+{
+    static const char * names[] = {"depth", "color", "infrared", "infrared2", "points", "rectified_color",
+        "color_aligned_to_depth", "infrared2_aligned_to_depth", "depth_aligned_to_color",
+        "depth_aligned_to_rectified_color", "depth_aligned_to_infrared2"};
+    return stream >= 0 && stream < RS_STREAM_COUNT ? names[stream] : "unknown";
+}
+
+const char * rs_format_to_string(rs_format format)
+{
+    static const char * names[] = {"any", "z16", "disparity16", "xyz32f", "yuyv", "rgb8", "bgr8", "rgba8", "bgra8",
+        "y8", "y16", "raw10"};
+    return format >= 0 && format < RS_FORMAT_COUNT ? names[format] : "unknown";
+}
+
+const char * rs_preset_to_string(rs_preset preset)
+{
+    static const char * names[] = {"best_quality", "largest_image", "highest_framerate"};
+    return preset >= 0 && preset < RS_PRESET_COUNT ? names[preset] : "unknown";
+}
+
+const char * rs_distortion_to_string(rs_distortion distortion)
+{
+    static const char * names[] = {"none", "modified_brown_conrady", "inverse_brown_conrady"};
+    return distortion >= 0 && distortion < RS_DISTORTION_COUNT ? names[distortion] : "unknown";
+}
+
+const char * rs_option_to_string(rs_option option)
+{
+    static const char * names[] = {
+        "color_backlight_compensation", "color_brightness", "color_contrast", "color_exposure", "color_gain",
+        "color_gamma", "color_hue", "color_saturation", "color_sharpness", "color_white_balance",
+        "color_enable_auto_exposure", "color_enable_auto_white_balance", "f200_laser_power", "f200_accuracy",
+        "f200_motion_range", "f200_filter_option", "f200_confidence_threshold", "sr300_dynamic_fps",
+        "sr300_auto_range_enable_motion_versus_range", "sr300_auto_range_enable_laser",
+        "sr300_auto_range_min_motion_versus_range", "sr300_auto_range_max_motion_versus_range",
+        "sr300_auto_range_start_motion_versus_range", "sr300_auto_range_min_laser", "sr300_auto_range_max_laser",
+        "sr300_auto_range_start_laser", "sr300_auto_range_upper_threshold", "sr300_auto_range_lower_threshold",
+        "r200_lr_auto_exposure_enabled", "r200_lr_gain", "r200_lr_exposure", "r200_emitter_enabled",
+        "r200_depth_units", "r200_depth_clamp_min", "r200_depth_clamp_max", "r200_disparity_multiplier",
+        "r200_disparity_shift", "r200_auto_exposure_mean_intensity_set_point",
+        "r200_auto_exposure_bright_ratio_set_point", "r200_auto_exposure_kp_gain", "r200_auto_exposure_kp_exposure",
+        "r200_auto_exposure_kp_dark_threshold", "r200_auto_exposure_top_edge", "r200_auto_exposure_bottom_edge",
+        "r200_auto_exposure_left_edge", "r200_auto_exposure_right_edge",
+        "r200_depth_control_estimate_median_decrement", "r200_depth_control_estimate_median_increment",
+        "r200_depth_control_median_threshold", "r200_depth_control_score_minimum_threshold",
+        "r200_depth_control_score_maximum_threshold", "r200_depth_control_texture_count_threshold",
+        "r200_depth_control_texture_difference_threshold", "r200_depth_control_second_peak_threshold",
+        "r200_depth_control_neighbor_threshold", "r200_depth_control_lr_threshold"};
+    return option >= 0 && option < RS_OPTION_COUNT ? names[option] : "unknown";
+}
+
+void rs_log_to_console(rs_log_severity min_severity, rs_error ** error) BEGIN_API_CALL
+{
+    if (min_severity < 0 || min_severity > RS_LOG_SEVERITY_NONE) throw std::runtime_error("bad enum value for argument \"min_severity\"");
+    std::lock_guard<std::mutex> lock(log_mutex);
+    console_severity = min_severity;
+}
+END_API_CALL(, min_severity)
+
+void rs_log_to_file(rs_log_severity min_severity, const char * file_path, rs_error ** error) BEGIN_API_CALL
+{
+    VALIDATE(file_path);
+    if (min_severity < 0 || min_severity > RS_LOG_SEVERITY_NONE) throw std::runtime_error("bad enum value for argument \"min_severity\"");
+    std::lock_guard<std::mutex> lock(log_mutex);
+    if (log_file) std::fclose(log_file);
+    log_file = std::fopen(file_path, "a");
+    if (!log_file) throw std::runtime_error(std::string("could not open log file ") + file_path);
+    file_severity = min_severity;
+}
+END_API_CALL(, min_severity, file_path)
@@ -0,0 +1,91 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense;
+
+/**
+ * Java copy of the calibration of a streaming device: depth scale, intrinsics per stream and extrinsics between
+ * streams. Reading it once after start() spares the per-frame JNI calls of get_stream_intrinsics / get_extrinsics.
+ */
+public class Calibration {
+    private static final int STREAMS = RS.stream.values().length;
+
+    private final float depthScale;
+    private final Intrinsics intrinsics[] = new Intrinsics[STREAMS];
+    private final Extrinsics extrinsics[] = new Extrinsics[STREAMS * STREAMS];
+
+    public Calibration(float depthScale) {
+        this.depthScale = depthScale;
+    }
+
+    /**
+     * Read the calibration of all enabled streams of a device
+     */
+    public static Calibration read(RS.device dev) {
+        final Calibration calibration = new Calibration(dev.get_depth_scale());
+        final StructReader reader = new StructReader();
+        for (RS.stream stream : RS.stream.values()) {
+            if (!dev.is_stream_enabled(stream.value)) continue;
+            calibration.setIntrinsics(stream, reader.readIntrinsics(dev, stream).toIntrinsics());
+        }
+        // Extrinsics are only defined between native streams
+        for (int from = 0; from < RS.stream.points.value; ++from) {
+            if (!dev.is_stream_enabled(from)) continue;
+            for (int to = 0; to < RS.stream.points.value; ++to) {
+                if (from == to || !dev.is_stream_enabled(to)) continue;
+                calibration.extrinsics[from * STREAMS + to] =
+                        reader.readExtrinsics(dev, RS.stream.fromValue(from), RS.stream.fromValue(to)).toExtrinsics();
+            }
+        }
+        return calibration;
+    }
+
+    /**
+     * Depth in meters corresponding to a depth value of 1
+     */
+    public float getDepthScale() {
+        return depthScale;
+    }
+
+    /**
+     * Intrinsics of a stream, or null if the stream was not enabled
+     */
+    public Intrinsics getIntrinsics(RS.stream stream) {
+        return intrinsics[stream.value];
+    }
+
+    public Calibration setIntrinsics(RS.stream stream, Intrinsics intrin) {
+        intrinsics[stream.value] = intrin;
+        return this;
+    }
+
+    /**
+     * Transformation from the viewpoint of one stream to another, or null if unknown
+     */
+    public Extrinsics getExtrinsics(RS.stream from, RS.stream to) {
+        return extrinsics[from.value * STREAMS + to.value];
+    }
+
+    /**
+     * Set the transformation between two streams, the opposite direction is derived
+     */
+    public Calibration setExtrinsics(RS.stream from, RS.stream to, Extrinsics extrin) {
+        extrinsics[from.value * STREAMS + to.value] = extrin;
+        extrinsics[to.value * STREAMS + from.value] = extrin.inverse();
+        return this;
+    }
+}
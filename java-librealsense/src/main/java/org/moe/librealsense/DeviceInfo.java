@@ -0,0 +1,85 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Identification strings of a device, converted to Java strings once. Use a {@link Cache} to read them once per device
+ * of a context.
+ */
+public class DeviceInfo {
+    public final String name;            /* model string, such as "Intel RealSense R200" */
+    public final String serial;          /* unique serial number, in a format specific to the device model */
+    public final String firmwareVersion; /* version of the installed firmware */
+
+    private DeviceInfo(RS.device dev) {
+        this.name = dev.get_name().toASCIIString();
+        this.serial = dev.get_serial().toASCIIString();
+        this.firmwareVersion = dev.get_firmware_version().toASCIIString();
+    }
+
+    /**
+     * Read the strings of a device, every call asks the device
+     */
+    public static DeviceInfo read(RS.device dev) {
+        if (dev == null) {
+            throw new NullPointerException();
+        }
+        return new DeviceInfo(dev);
+    }
+
+    /**
+     * Strings of the devices of one context, each read on first use. The cache belongs to its context: create it with
+     * the context and drop it when the context is deleted, it never outlives the devices it describes.
+     */
+    public static final class Cache {
+        private final RS.context ctx;
+        private final AtomicReferenceArray<DeviceInfo> infos;
+
+        public Cache(RS.context ctx) {
+            if (ctx == null) {
+                throw new NullPointerException();
+            }
+            this.ctx = ctx;
+            this.infos = new AtomicReferenceArray<>(ctx.get_device_count());
+        }
+
+        public RS.context getContext() {
+            return ctx;
+        }
+
+        /**
+         * Strings of the device at this index of the context
+         */
+        public DeviceInfo get(int index) {
+            DeviceInfo info = infos.get(index);
+            if (info == null) {
+                // Concurrent first uses may both read the device, the strings are the same
+                info = new DeviceInfo(ctx.get_device(index));
+                infos.set(index, info);
+            }
+            return info;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " (serial " + serial + ", firmware " + firmwareVersion + ")";
+    }
+}
@@ -0,0 +1,246 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense;
+
+import org.moe.natj.general.ptr.DoublePtr;
+import org.moe.natj.general.ptr.IntPtr;
+import org.moe.natj.general.ptr.impl.PtrFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Option access for one device which batches hardware IO. Reads and writes of several options go through a single
+ * get_options / set_options call, option support and ranges are queried once, and values read within the time to live
+ * are served from a cache instead of the device.
+ * <p>
+ * Writing an option may change others (e.g. setting color_exposure disables color_enable_auto_exposure), so every
+ * write drops the cached values of all options except the ones written.
+ */
+public class DeviceOptions {
+    private static final RS.option[] OPTIONS = RS.option.values();
+
+    private static final byte UNKNOWN = 0;
+    private static final byte SUPPORTED = 1;
+    private static final byte UNSUPPORTED = 2;
+
+    private final RS.device dev;
+    private final long ttlNanos;
+
+    private final byte support[] = new byte[OPTIONS.length];
+    private final Range ranges[] = new Range[OPTIONS.length];
+    private final double values[] = new double[OPTIONS.length];
+    private final long fetched[] = new long[OPTIONS.length];
+    private final boolean cached[] = new boolean[OPTIONS.length];
+
+    // Scratch arrays, grown on demand: a batch written may repeat options
+    private IntPtr optionsPtr;
+    private DoublePtr valuesPtr;
+    private int ptrCapacity;
+    private int pending[] = new int[OPTIONS.length];
+    private final boolean requested[] = new boolean[OPTIONS.length];
+    private DoublePtr minPtr, maxPtr, stepPtr;
+
+    public static class Range {
+        public final double min;  /* the minimum value which will be accepted for this option */
+        public final double max;  /* the maximum value which will be accepted for this option */
+        public final double step; /* the granularity of discrete options, or zero for continuous options */
+
+        public Range(double min, double max, double step) {
+            this.min = min;
+            this.max = max;
+            this.step = step;
+        }
+    }
+
+    /**
+     * @param ttlMillis  how long a value read from the device is served from the cache, 0 disables caching
+     */
+    public DeviceOptions(RS.device dev, long ttlMillis) {
+        if (dev == null) {
+            throw new NullPointerException();
+        }
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("Invalid time to live " + ttlMillis);
+        }
+        this.dev = dev;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    public RS.device getDevice() {
+        return dev;
+    }
+
+    /**
+     * Determine if the device supports an option, the device is asked only once per option
+     */
+    public synchronized boolean supports(RS.option option) {
+        final int i = option.value;
+        if (support[i] == UNKNOWN) {
+            support[i] = dev.supports_option(option.value) ? SUPPORTED : UNSUPPORTED;
+        }
+        return support[i] == SUPPORTED;
+    }
+
+    /**
+     * Retrieve the range of a supported option, the device is asked only once per option
+     */
+    public synchronized Range getRange(RS.option option) {
+        final int i = option.value;
+        Range range = ranges[i];
+        if (range == null) {
+            if (minPtr == null) {
+                minPtr = PtrFactory.newDoubleReference();
+                maxPtr = PtrFactory.newDoubleReference();
+                stepPtr = PtrFactory.newDoubleReference();
+            }
+            dev.get_option_range(option.value, minPtr, maxPtr, stepPtr);
+            range = new Range(minPtr.getValue(), maxPtr.getValue(), stepPtr.getValue());
+            ranges[i] = range;
+        }
+        return range;
+    }
+
+    /**
+     * Retrieve the value of a single option
+     */
+    public synchronized double get(RS.option option) {
+        final int i = option.value;
+        if (!isFresh(i, System.nanoTime())) {
+            values[i] = dev.get_option(option.value);
+            fetched[i] = System.nanoTime();
+            cached[i] = true;
+        }
+        return values[i];
+    }
+
+    /**
+     * Retrieve the values of several options. Options without a fresh cached value are read from the device
+     * together in one get_options call.
+     */
+    public synchronized void get(RS.option options[], double out[]) {
+        if (out.length < options.length) {
+            throw new IllegalArgumentException("Values array is too short");
+        }
+        final long now = System.nanoTime();
+        int count = 0;
+        for (RS.option option : options) {
+            final int i = option.value;
+            if (!isFresh(i, now) && !requested[i]) {
+                // Duplicates are requested only once
+                requested[i] = true;
+                pending[count++] = i;
+            }
+        }
+        if (count != 0) {
+            try {
+                ensurePtrCapacity(count);
+                optionsPtr.copyFrom(pending, 0, 0, count);
+                dev.get_options(optionsPtr, count, valuesPtr);
+                // Only a successful read makes the values fresh
+                final long time = System.nanoTime();
+                for (int k = 0; k < count; ++k) {
+                    final int i = pending[k];
+                    values[i] = valuesPtr.getValue(k);
+                    fetched[i] = time;
+                    cached[i] = true;
+                }
+            } finally {
+                for (int k = 0; k < count; ++k) {
+                    requested[pending[k]] = false;
+                }
+            }
+        }
+        for (int k = 0; k < options.length; ++k) {
+            out[k] = values[options[k].value];
+        }
+    }
+
+    /**
+     * Re-read several options from the device in one get_options call, regardless of the cache
+     */
+    public synchronized void refresh(RS.option options[], double out[]) {
+        for (RS.option option : options) {
+            cached[option.value] = false;
+        }
+        get(options, out);
+    }
+
+    /**
+     * Set the value of a single option
+     */
+    public synchronized void set(RS.option option, double value) {
+        dev.set_option(option.value, value);
+        invalidate();
+        store(option.value, value, System.nanoTime());
+    }
+
+    /**
+     * Set the values of several options in one set_options call. The device applies them in order, so the last value
+     * of a repeated option wins.
+     */
+    public synchronized void set(RS.option options[], double in[]) {
+        if (in.length < options.length) {
+            throw new IllegalArgumentException("Values array is too short");
+        }
+        final int count = options.length;
+        if (count == 0) {
+            return;
+        }
+        ensurePtrCapacity(count);
+        for (int k = 0; k < count; ++k) {
+            pending[k] = options[k].value;
+        }
+        optionsPtr.copyFrom(pending, 0, 0, count);
+        valuesPtr.copyFrom(in, 0, 0, count);
+        dev.set_options(optionsPtr, count, valuesPtr);
+
+        invalidate();
+        final long now = System.nanoTime();
+        for (int k = 0; k < count; ++k) {
+            store(options[k].value, in[k], now);
+        }
+    }
+
+    /**
+     * Forget all cached option values, support and ranges are kept
+     */
+    public synchronized void invalidate() {
+        for (int i = 0; i < cached.length; ++i) {
+            cached[i] = false;
+        }
+    }
+
+    private boolean isFresh(int i, long now) {
+        return cached[i] && now - fetched[i] < ttlNanos;
+    }
+
+    private void store(int i, double value, long now) {
+        values[i] = value;
+        fetched[i] = now;
+        cached[i] = true;
+    }
+
+    private void ensurePtrCapacity(int count) {
+        if (count > ptrCapacity) {
+            ptrCapacity = Math.max(count, OPTIONS.length);
+            optionsPtr = PtrFactory.newIntArray(ptrCapacity);
+            valuesPtr = PtrFactory.newDoubleArray(ptrCapacity);
+            pending = new int[ptrCapacity];
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense;
+
+/**
+ * Java strings of the librealsense enums, converted from the native rs_*_to_string results once per value. Intended for
+ * log messages and metric labels on per-frame paths.
+ */
+public final class EnumStrings {
+    private EnumStrings() {
+    }
+
+    private static final String streams[] = new String[RS.stream.values().length];
+    private static final String formats[] = new String[RS.format.values().length];
+    private static final String presets[] = new String[RS.preset.values().length];
+    private static final String distortions[] = new String[RS.distortion.values().length];
+    private static final String options[] = new String[RS.option.values().length];
+
+    // Racing threads may both convert a value, they store equal immutable strings so the race is harmless
+
+    public static String of(RS.stream stream) {
+        String name = streams[stream.value];
+        if (name == null) {
+            name = RS.rs_stream_to_string(stream.value).toASCIIString();
+            streams[stream.value] = name;
+        }
+        return name;
+    }
+
+    public static String of(RS.format format) {
+        String name = formats[format.value];
+        if (name == null) {
+            name = RS.rs_format_to_string(format.value).toASCIIString();
+            formats[format.value] = name;
+        }
+        return name;
+    }
+
+    public static String of(RS.preset preset) {
+        String name = presets[preset.value];
+        if (name == null) {
+            name = RS.rs_preset_to_string(preset.value).toASCIIString();
+            presets[preset.value] = name;
+        }
+        return name;
+    }
+
+    public static String of(RS.distortion distortion) {
+        String name = distortions[distortion.value];
+        if (name == null) {
+            name = RS.rs_distortion_to_string(distortion.value).toASCIIString();
+            distortions[distortion.value] = name;
+        }
+        return name;
+    }
+
+    public static String of(RS.option option) {
+        String name = options[option.value];
+        if (name == null) {
+            name = RS.rs_option_to_string(option.value).toASCIIString();
+            options[option.value] = name;
+        }
+        return name;
+    }
+
+    /**
+     * String of a native RS.stream value
+     */
+    public static String ofStream(int value) {
+        return of(RS.stream.fromValue(value));
+    }
+
+    /**
+     * String of a native RS.format value, e.g. as returned by get_stream_format
+     */
+    public static String ofFormat(int value) {
+        return of(RS.format.fromValue(value));
+    }
+
+    /**
+     * String of a native RS.option value
+     */
+    public static String ofOption(int value) {
+        return of(RS.option.fromValue(value));
+    }
+}
@@ -14,9 +14,7 @@ See the License for the specific language governing permissions and
 limitations under the License.
 */
 
-package org.moe.librealsense.samples;
-
-import org.moe.librealsense.RS;
+package org.moe.librealsense;
 
 public class Extrinsics {
     public final float rotation[];    /* column-major 3x3 rotation matrix */
@@ -27,6 +25,31 @@ public class Extrinsics {
         this.translation = extrin.getTranslation().toFloatArray(3);
     }
 
+    public Extrinsics(float rotation[], float translation[]) {
+        if (rotation.length != 9 || translation.length != 3) {
+            throw new IllegalArgumentException("Expected a 3x3 rotation and a 3 element translation");
+        }
+        this.rotation = rotation.clone();
+        this.translation = translation.clone();
+    }
+
+    /**
+     * Transformation in the opposite direction
+     */
+    public Extrinsics inverse() {
+        final float r[] = new float[9];
+        for (int i = 0; i < 3; ++i) {
+            for (int j = 0; j < 3; ++j) {
+                r[i * 3 + j] = rotation[j * 3 + i];
+            }
+        }
+        final float t[] = new float[3];
+        for (int i = 0; i < 3; ++i) {
+            t[i] = -(r[i] * translation[0] + r[i + 3] * translation[1] + r[i + 6] * translation[2]);
+        }
+        return new Extrinsics(r, t);
+    }
+
     public void transform(float to_point[], float from_point[]) {
         final float[] rotation = this.rotation;
         final float[] translation = this.translation;
@@ -0,0 +1,105 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Flyweight over an rs_extrinsics struct in a native-order buffer, as filled by RS.read_extrinsics. Fields are decoded
+ * on access, so a view can be pointed at another struct without allocating.
+ */
+public class ExtrinsicsView {
+    /**
+     * Size of the struct in bytes
+     */
+    public static final int SIZE = 48;
+
+    private static final int ROTATION = 0;
+    private static final int TRANSLATION = 36;
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    public ExtrinsicsView(ByteBuffer buffer, int offset) {
+        wrap(buffer, offset);
+    }
+
+    /**
+     * Point the view at the struct starting at an absolute offset of a buffer
+     */
+    public ExtrinsicsView wrap(ByteBuffer buffer, int offset) {
+        if (buffer.order() != ByteOrder.nativeOrder()) {
+            throw new IllegalArgumentException("Buffer must be in native byte order");
+        }
+        if (offset < 0 || offset + SIZE > buffer.limit()) {
+            throw new IndexOutOfBoundsException("Struct at " + offset + " exceeds buffer limit " + buffer.limit());
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Element of the column-major 3x3 rotation matrix
+     */
+    public float getRotation(int index) {
+        if (index < 0 || index >= 9) {
+            throw new IndexOutOfBoundsException("Invalid rotation element " + index);
+        }
+        return buffer.getFloat(offset + ROTATION + index * 4);
+    }
+
+    /**
+     * Element of the translation vector, in meters
+     */
+    public float getTranslation(int index) {
+        if (index < 0 || index >= 3) {
+            throw new IndexOutOfBoundsException("Invalid translation element " + index);
+        }
+        return buffer.getFloat(offset + TRANSLATION + index * 4);
+    }
+
+    /**
+     * Encode all fields of extrinsics into the struct, the buffer must be writable
+     */
+    public ExtrinsicsView set(Extrinsics extrin) {
+        for (int i = 0; i < 9; ++i) {
+            buffer.putFloat(offset + ROTATION + i * 4, extrin.rotation[i]);
+        }
+        for (int i = 0; i < 3; ++i) {
+            buffer.putFloat(offset + TRANSLATION + i * 4, extrin.translation[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Decode all fields into an immutable copy
+     */
+    public Extrinsics toExtrinsics() {
+        final float rotation[] = new float[9];
+        final float translation[] = new float[3];
+        for (int i = 0; i < 9; ++i) {
+            rotation[i] = getRotation(i);
+        }
+        for (int i = 0; i < 3; ++i) {
+            translation[i] = getTranslation(i);
+        }
+        return new Extrinsics(rotation, translation);
+    }
+}
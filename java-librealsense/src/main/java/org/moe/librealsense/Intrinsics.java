@@ -14,9 +14,7 @@ See the License for the specific language governing permissions and
 limitations under the License.
 */
 
-package org.moe.librealsense.samples;
-
-import org.moe.librealsense.RS;
+package org.moe.librealsense;
 
 public class Intrinsics {
     public final int width;      /* width of the image in pixels */
@@ -39,6 +37,20 @@ public class Intrinsics {
         this.coeffs = intrin.getCoeffs().toFloatArray(5);
     }
 
+    public Intrinsics(int width, int height, float ppx, float ppy, float fx, float fy, int model, float coeffs[]) {
+        if (coeffs.length != 5) {
+            throw new IllegalArgumentException("Expected 5 distortion coefficients");
+        }
+        this.width = width;
+        this.height = height;
+        this.ppx = ppx;
+        this.ppy = ppy;
+        this.fx = fx;
+        this.fy = fy;
+        this.model = model;
+        this.coeffs = coeffs.clone();
+    }
+
     public void project(float pixel[], float point[]) {
         assert (model != RS.distortion.inverse_brown_conrady.value); // Cannot project to an inverse-distorted image
 
@@ -0,0 +1,129 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Flyweight over an rs_intrinsics struct in a native-order buffer, as filled by RS.read_stream_intrinsics. Fields are
+ * decoded on access, so a view can be pointed at another struct without allocating.
+ */
+public class IntrinsicsView {
+    /**
+     * Size of the struct in bytes
+     */
+    public static final int SIZE = 48;
+
+    private static final int WIDTH = 0;
+    private static final int HEIGHT = 4;
+    private static final int PPX = 8;
+    private static final int PPY = 12;
+    private static final int FX = 16;
+    private static final int FY = 20;
+    private static final int MODEL = 24;
+    private static final int COEFFS = 28;
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    public IntrinsicsView(ByteBuffer buffer, int offset) {
+        wrap(buffer, offset);
+    }
+
+    /**
+     * Point the view at the struct starting at an absolute offset of a buffer
+     */
+    public IntrinsicsView wrap(ByteBuffer buffer, int offset) {
+        if (buffer.order() != ByteOrder.nativeOrder()) {
+            throw new IllegalArgumentException("Buffer must be in native byte order");
+        }
+        if (offset < 0 || offset + SIZE > buffer.limit()) {
+            throw new IndexOutOfBoundsException("Struct at " + offset + " exceeds buffer limit " + buffer.limit());
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public int getWidth() {
+        return buffer.getInt(offset + WIDTH);
+    }
+
+    public int getHeight() {
+        return buffer.getInt(offset + HEIGHT);
+    }
+
+    public float getPpx() {
+        return buffer.getFloat(offset + PPX);
+    }
+
+    public float getPpy() {
+        return buffer.getFloat(offset + PPY);
+    }
+
+    public float getFx() {
+        return buffer.getFloat(offset + FX);
+    }
+
+    public float getFy() {
+        return buffer.getFloat(offset + FY);
+    }
+
+    public int getModel() {
+        return buffer.getInt(offset + MODEL);
+    }
+
+    /**
+     * One of the 5 distortion coefficients
+     */
+    public float getCoeff(int index) {
+        if (index < 0 || index >= 5) {
+            throw new IndexOutOfBoundsException("Invalid coefficient " + index);
+        }
+        return buffer.getFloat(offset + COEFFS + index * 4);
+    }
+
+    /**
+     * Encode all fields of intrinsics into the struct, the buffer must be writable
+     */
+    public IntrinsicsView set(Intrinsics intrin) {
+        buffer.putInt(offset + WIDTH, intrin.width);
+        buffer.putInt(offset + HEIGHT, intrin.height);
+        buffer.putFloat(offset + PPX, intrin.ppx);
+        buffer.putFloat(offset + PPY, intrin.ppy);
+        buffer.putFloat(offset + FX, intrin.fx);
+        buffer.putFloat(offset + FY, intrin.fy);
+        buffer.putInt(offset + MODEL, intrin.model);
+        for (int i = 0; i < 5; ++i) {
+            buffer.putFloat(offset + COEFFS + i * 4, intrin.coeffs[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Decode all fields into an immutable copy
+     */
+    public Intrinsics toIntrinsics() {
+        final float coeffs[] = new float[5];
+        for (int i = 0; i < 5; ++i) {
+            coeffs[i] = getCoeff(i);
+        }
+        return new Intrinsics(getWidth(), getHeight(), getPpx(), getPpy(), getFx(), getFy(), getModel(), coeffs);
+    }
+}
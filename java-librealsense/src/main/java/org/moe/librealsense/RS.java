@@ -19,9 +19,13 @@ package org.moe.librealsense;
 import org.moe.natj.cxx.CxxObject;
 import org.moe.natj.cxx.CxxOperatorKind;
 import org.moe.natj.cxx.ann.*;
+import org.moe.natj.general.ann.NUInt;
 import org.moe.natj.general.ptr.*;
 
-@CxxHeader(value = "rs.hpp", useQuotes = true)
+@CxxHeaders({
+        @CxxHeader(value = "rs.hpp", useQuotes = true),
+        @CxxHeader(value = "rs_bulk.hpp", useQuotes = true),
+})
 public class RS {
     private RS() {
     }
@@ -79,6 +83,24 @@ public class RS {
         stream(int value) {
             this.value = value;
         }
+
+        private static final stream[] byValue = new stream[values().length];
+
+        static {
+            for (stream v : values()) {
+                byValue[v.value] = v;
+            }
+        }
+
+        /**
+         * Map a native value back to the enum constant without scanning values()
+         */
+        public static stream fromValue(int value) {
+            if (value < 0 || value >= byValue.length || byValue[value] == null) {
+                throw new IllegalArgumentException("Invalid stream value " + value);
+            }
+            return byValue[value];
+        }
     }
 
     public enum format {
@@ -138,6 +160,24 @@ public class RS {
         format(int value) {
             this.value = value;
         }
+
+        private static final format[] byValue = new format[values().length];
+
+        static {
+            for (format v : values()) {
+                byValue[v.value] = v;
+            }
+        }
+
+        /**
+         * Map a native value back to the enum constant without scanning values()
+         */
+        public static format fromValue(int value) {
+            if (value < 0 || value >= byValue.length || byValue[value] == null) {
+                throw new IllegalArgumentException("Invalid format value " + value);
+            }
+            return byValue[value];
+        }
     }
 
     public enum preset {
@@ -161,6 +201,24 @@ public class RS {
         preset(int value) {
             this.value = value;
         }
+
+        private static final preset[] byValue = new preset[values().length];
+
+        static {
+            for (preset v : values()) {
+                byValue[v.value] = v;
+            }
+        }
+
+        /**
+         * Map a native value back to the enum constant without scanning values()
+         */
+        public static preset fromValue(int value) {
+            if (value < 0 || value >= byValue.length || byValue[value] == null) {
+                throw new IllegalArgumentException("Invalid preset value " + value);
+            }
+            return byValue[value];
+        }
     }
 
     public enum distortion {
@@ -184,6 +242,24 @@ public class RS {
         distortion(int value) {
             this.value = value;
         }
+
+        private static final distortion[] byValue = new distortion[values().length];
+
+        static {
+            for (distortion v : values()) {
+                byValue[v.value] = v;
+            }
+        }
+
+        /**
+         * Map a native value back to the enum constant without scanning values()
+         */
+        public static distortion fromValue(int value) {
+            if (value < 0 || value >= byValue.length || byValue[value] == null) {
+                throw new IllegalArgumentException("Invalid distortion value " + value);
+            }
+            return byValue[value];
+        }
     }
 
     public enum option {
@@ -419,6 +495,24 @@ public class RS {
         option(int value) {
             this.value = value;
         }
+
+        private static final option[] byValue = new option[values().length];
+
+        static {
+            for (option v : values()) {
+                byValue[v.value] = v;
+            }
+        }
+
+        /**
+         * Map a native value back to the enum constant without scanning values()
+         */
+        public static option fromValue(int value) {
+            if (value < 0 || value >= byValue.length || byValue[value] == null) {
+                throw new IllegalArgumentException("Invalid option value " + value);
+            }
+            return byValue[value];
+        }
     }
 
     @CxxClass("rs::float2")
@@ -840,6 +934,29 @@ public class RS {
     @CxxFunction
     public static native ConstBytePtr rs_option_to_string(@CxxEnum("rs_option") int /* option */ option);
 
+    /// copy a block of native memory, e.g. frame data into a direct buffer wrapped with PtrFactory.newBytePtr
+    /// \param[out] dest  the destination block
+    /// \param[in] src    the source block
+    /// \param[in] count  the number of bytes to copy
+    @CxxFunction("std::memcpy")
+    public static native void memcpy(VoidPtr dest, ConstVoidPtr src, @NUInt long count);
+
+    /// copy the intrinsic camera parameters of a stream into a block of memory in one call, see IntrinsicsView
+    /// \param[in] device  the device to query
+    /// \param[in] stream  the stream whose parameters to retrieve
+    /// \param[out] intrin at least IntrinsicsView.SIZE bytes receiving an rs_intrinsics struct
+    @CxxFunction("rs_bulk::read_stream_intrinsics")
+    public static native void read_stream_intrinsics(@CxxConst device device, @CxxEnum("rs::stream") int /* stream */ stream, VoidPtr intrin);
+
+    /// copy the extrinsic transformation between the viewpoints of two streams into a block of memory in one call,
+    /// see ExtrinsicsView
+    /// \param[in] device       the device to query
+    /// \param[in] from_stream  the stream whose coordinate space to transform from
+    /// \param[in] to_stream    the stream whose coordinate space to transform to
+    /// \param[out] extrin      at least ExtrinsicsView.SIZE bytes receiving an rs_extrinsics struct
+    @CxxFunction("rs_bulk::read_extrinsics")
+    public static native void read_extrinsics(@CxxConst device device, @CxxEnum("rs::stream") int /* stream */ from_stream, @CxxEnum("rs::stream") int /* stream */ to_stream, VoidPtr extrin);
+
     public enum log_severity {
         /**
          * Detailed information about ordinary operations
@@ -873,6 +990,24 @@ public class RS {
         log_severity(int value) {
             this.value = value;
         }
+
+        private static final log_severity[] byValue = new log_severity[values().length];
+
+        static {
+            for (log_severity v : values()) {
+                byValue[v.value] = v;
+            }
+        }
+
+        /**
+         * Map a native value back to the enum constant without scanning values()
+         */
+        public static log_severity fromValue(int value) {
+            if (value < 0 || value >= byValue.length || byValue[value] == null) {
+                throw new IllegalArgumentException("Invalid log_severity value " + value);
+            }
+            return byValue[value];
+        }
     }
 
     @CxxFunction("rs::log_to_console")
@@ -0,0 +1,225 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense;
+
+import org.moe.natj.general.ptr.IntPtr;
+import org.moe.natj.general.ptr.impl.PtrFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * All streaming modes of a device, enumerated once and kept in a flat int table so that mode selection never goes back
+ * to the device. Only native streams (depth, color, infrared, infrared2) have modes, synthetic streams inherit theirs.
+ * <p>
+ * Catalogs are cached per device serial number, {@link #preload(RS.context)} enumerates all connected devices at once.
+ */
+public class StreamModeCatalog {
+    private static final int WIDTH = 0;
+    private static final int HEIGHT = 1;
+    private static final int FORMAT = 2;
+    private static final int FRAMERATE = 3;
+    private static final int FIELDS = 4;
+
+    private static final int NATIVE_STREAMS = RS.stream.points.value;
+
+    private static final ConcurrentHashMap<String, StreamModeCatalog> catalogs = new ConcurrentHashMap<>();
+
+    private final String serial;
+    private final int offsets[] = new int[NATIVE_STREAMS + 1];
+    private final int modes[];
+
+    private StreamModeCatalog(RS.device dev, String serial) {
+        this.serial = serial;
+
+        int total = 0;
+        final int counts[] = new int[NATIVE_STREAMS];
+        for (int s = 0; s < NATIVE_STREAMS; ++s) {
+            counts[s] = dev.get_stream_mode_count(s);
+            offsets[s] = total;
+            total += counts[s];
+        }
+        offsets[NATIVE_STREAMS] = total;
+        modes = new int[total * FIELDS];
+
+        final IntPtr width = PtrFactory.newIntReference();
+        final IntPtr height = PtrFactory.newIntReference();
+        final IntPtr format = PtrFactory.newIntReference();
+        final IntPtr framerate = PtrFactory.newIntReference();
+        for (int s = 0; s < NATIVE_STREAMS; ++s) {
+            for (int i = 0; i < counts[s]; ++i) {
+                dev.get_stream_mode(s, i, width, height, format, framerate);
+                final int m = (offsets[s] + i) * FIELDS;
+                modes[m + WIDTH] = width.getValue();
+                modes[m + HEIGHT] = height.getValue();
+                modes[m + FORMAT] = format.getValue();
+                modes[m + FRAMERATE] = framerate.getValue();
+            }
+        }
+    }
+
+    /**
+     * Catalog of a device, enumerated on first use
+     */
+    public static StreamModeCatalog of(RS.device dev) {
+        final String serial = dev.get_serial().toASCIIString();
+        return catalogs.computeIfAbsent(serial, s -> new StreamModeCatalog(dev, s));
+    }
+
+    /**
+     * Enumerate the modes of all connected devices, one thread per device
+     */
+    public static StreamModeCatalog[] preload(RS.context ctx) throws InterruptedException {
+        final int count = ctx.get_device_count();
+        final StreamModeCatalog result[] = new StreamModeCatalog[count];
+        final Thread threads[] = new Thread[count];
+        final RuntimeException errors[] = new RuntimeException[count];
+        for (int d = 0; d < count; ++d) {
+            final int index = d;
+            final RS.device dev = ctx.get_device(index);
+            threads[d] = new Thread(() -> {
+                try {
+                    result[index] = of(dev);
+                } catch (RuntimeException ex) {
+                    errors[index] = ex;
+                }
+            });
+            threads[d].setName("Mode enumeration " + d);
+            threads[d].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (RuntimeException error : errors) {
+            if (error != null) throw error;
+        }
+        return result;
+    }
+
+    /**
+     * Drop the cached catalog of a device, e.g. after a firmware update
+     */
+    public static void forget(String serial) {
+        catalogs.remove(serial);
+    }
+
+    public String getSerial() {
+        return serial;
+    }
+
+    /**
+     * Number of modes of a stream, zero for synthetic streams
+     */
+    public int getModeCount(RS.stream stream) {
+        return stream.value < NATIVE_STREAMS ? offsets[stream.value + 1] - offsets[stream.value] : 0;
+    }
+
+    public int getWidth(RS.stream stream, int index) {
+        return field(stream, index, WIDTH);
+    }
+
+    public int getHeight(RS.stream stream, int index) {
+        return field(stream, index, HEIGHT);
+    }
+
+    /**
+     * Pixel format of the mode, as an RS.format value
+     */
+    public int getFormat(RS.stream stream, int index) {
+        return field(stream, index, FORMAT);
+    }
+
+    public int getFramerate(RS.stream stream, int index) {
+        return field(stream, index, FRAMERATE);
+    }
+
+    private int field(RS.stream stream, int index, int field) {
+        if (index < 0 || index >= getModeCount(stream)) {
+            throw new IndexOutOfBoundsException("Invalid mode index " + index + " for stream " + stream);
+        }
+        return modes[(offsets[stream.value] + index) * FIELDS + field];
+    }
+
+    /**
+     * Find the mode with the highest framerate among those at least as large as requested, ties are broken by the
+     * larger image
+     *
+     * @param format  required format, or RS.format.any
+     * @return        the mode index, or -1 if no mode qualifies
+     */
+    public int findHighestFramerate(RS.stream stream, int minWidth, int minHeight, RS.format format) {
+        int best = -1;
+        int bestRate = -1;
+        long bestArea = -1;
+        for (int i = 0, n = getModeCount(stream); i < n; ++i) {
+            final int m = (offsets[stream.value] + i) * FIELDS;
+            if (modes[m + WIDTH] < minWidth || modes[m + HEIGHT] < minHeight || !matches(format, modes[m + FORMAT])) {
+                continue;
+            }
+            final int rate = modes[m + FRAMERATE];
+            final long area = (long) modes[m + WIDTH] * modes[m + HEIGHT];
+            if (rate > bestRate || rate == bestRate && area > bestArea) {
+                best = i;
+                bestRate = rate;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find the mode of a stream which best pairs with a mode already chosen for another stream: the framerate must be
+     * equal, and among those the mode with the closest resolution wins
+     *
+     * @param format  required format, or RS.format.any
+     * @return        the mode index, or -1 if no mode runs at the same framerate
+     */
+    public int findBestMatch(RS.stream stream, RS.format format, RS.stream other, int otherIndex) {
+        final int width = getWidth(other, otherIndex);
+        final int height = getHeight(other, otherIndex);
+        final int framerate = getFramerate(other, otherIndex);
+
+        int best = -1;
+        long bestCost = Long.MAX_VALUE;
+        for (int i = 0, n = getModeCount(stream); i < n; ++i) {
+            final int m = (offsets[stream.value] + i) * FIELDS;
+            if (modes[m + FRAMERATE] != framerate || !matches(format, modes[m + FORMAT])) {
+                continue;
+            }
+            final long dw = modes[m + WIDTH] - width;
+            final long dh = modes[m + HEIGHT] - height;
+            final long cost = dw * dw + dh * dh;
+            if (cost < bestCost) {
+                best = i;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Enable a stream on the device with one of the cataloged modes
+     */
+    public void enable(RS.device dev, RS.stream stream, int index) {
+        dev.enable_stream(stream.value, getWidth(stream, index), getHeight(stream, index), getFormat(stream, index),
+                getFramerate(stream, index));
+    }
+
+    private static boolean matches(RS.format format, int value) {
+        return format == RS.format.any || format.value == value;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense;
+
+import org.moe.natj.general.ptr.BytePtr;
+import org.moe.natj.general.ptr.impl.PtrFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads calibration structs of a device with one native call each, instead of one call per field as through
+ * RS.rs_intrinsics and RS.rs_extrinsics. The returned views are backed by buffers of the reader and are overwritten by
+ * the next read, so a reader must only be used by one thread.
+ */
+public class StructReader {
+    private final ByteBuffer intrinsics_buffer = ByteBuffer.allocateDirect(IntrinsicsView.SIZE).order(ByteOrder.nativeOrder());
+    private final ByteBuffer extrinsics_buffer = ByteBuffer.allocateDirect(ExtrinsicsView.SIZE).order(ByteOrder.nativeOrder());
+    private final IntrinsicsView intrinsics = new IntrinsicsView(intrinsics_buffer, 0);
+    private final ExtrinsicsView extrinsics = new ExtrinsicsView(extrinsics_buffer, 0);
+
+    // Created on first use, wrapping the buffers above
+    private BytePtr intrinsics_ptr;
+    private BytePtr extrinsics_ptr;
+
+    /**
+     * Intrinsics of an enabled stream
+     */
+    public IntrinsicsView readIntrinsics(RS.device dev, RS.stream stream) {
+        if (intrinsics_ptr == null) {
+            intrinsics_ptr = PtrFactory.newBytePtr(intrinsics_buffer);
+        }
+        RS.read_stream_intrinsics(dev, stream.value, intrinsics_ptr);
+        return intrinsics;
+    }
+
+    /**
+     * Transformation from the viewpoint of one stream to another
+     */
+    public ExtrinsicsView readExtrinsics(RS.device dev, RS.stream from, RS.stream to) {
+        if (extrinsics_ptr == null) {
+            extrinsics_ptr = PtrFactory.newBytePtr(extrinsics_buffer);
+        }
+        RS.read_extrinsics(dev, from.value, to.value, extrinsics_ptr);
+        return extrinsics;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.geometry;
+
+import org.moe.librealsense.Extrinsics;
+import org.moe.librealsense.Intrinsics;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Produces a color image at depth resolution (what RS.stream.color_aligned_to_depth describes) by gathering color
+ * pixels. Where each depth pixel lands in the color image depends only on its depth, so the gather table entry of a
+ * pixel is recomputed only when its depth moves to another bin. Bins are uniform in inverse depth and sized so that
+ * the parallax within one bin stays below a quarter of a color pixel. With a warm table the per-pixel work is a table
+ * lookup and a copy.
+ */
+public class ColorToDepthResampler {
+    public enum Interpolation {
+        NEAREST,
+        BILINEAR,
+    }
+
+    private static final float BIN_PIXELS = 0.25f;
+    private static final int NO_BIN = -1;
+    private static final int WEIGHT_ONE = 256;
+
+    private final Intrinsics depth_intrin;
+    private final Extrinsics depth_to_color;
+    private final Intrinsics color_intrin;
+    private final float depth_scale;
+    private final int channels;
+    private final Interpolation interpolation;
+
+    // bin = bin_scale / depth_value, or 0 for every depth if there is no parallax
+    private final float bin_scale;
+
+    // Deprojection rays of the depth pixel centers
+    private final float ray_x[];
+    private final float ray_y[];
+
+    private final int bins[];
+    private final int gather[];  /* byte offset of the (top left) color pixel, or -1 outside of the color image */
+    private final int weights[]; /* bilinear weights, x in the high and y in the low 16 bits, WEIGHT_ONE is 1.0 */
+
+    private final float point[] = new float[3];
+    private final float color_point[] = new float[3];
+    private final float color_pixel[] = new float[2];
+
+    /**
+     * @param depth_scale  depth in meters corresponding to a depth value of 1
+     * @param channels     bytes per color pixel, 3 for rgb8 / bgr8, 4 for rgba8 / bgra8
+     */
+    public ColorToDepthResampler(Intrinsics depth_intrin, Extrinsics depth_to_color, Intrinsics color_intrin,
+                                 float depth_scale, int channels, Interpolation interpolation) {
+        if (depth_intrin == null || depth_to_color == null || color_intrin == null || interpolation == null) {
+            throw new NullPointerException();
+        }
+        if (channels <= 0) {
+            throw new IllegalArgumentException("Invalid channel count " + channels);
+        }
+        this.depth_intrin = depth_intrin;
+        this.depth_to_color = depth_to_color;
+        this.color_intrin = color_intrin;
+        this.depth_scale = depth_scale;
+        this.channels = channels;
+        this.interpolation = interpolation;
+
+        // Parallax in color pixels is about fx * baseline / z
+        final float t[] = depth_to_color.translation;
+        final float baseline = (float) Math.sqrt(t[0] * t[0] + t[1] * t[1] + t[2] * t[2]);
+        final float focal = Math.max(color_intrin.fx, color_intrin.fy);
+        bin_scale = focal * baseline / (depth_scale * BIN_PIXELS);
+
+        final int size = depth_intrin.width * depth_intrin.height;
+        ray_x = new float[size];
+        ray_y = new float[size];
+        final float pixel[] = new float[2];
+        final float ray[] = new float[3];
+        for (int y = 0, i = 0; y < depth_intrin.height; ++y) {
+            for (int x = 0; x < depth_intrin.width; ++x, ++i) {
+                pixel[0] = x;
+                pixel[1] = y;
+                depth_intrin.deproject(ray, pixel, 1);
+                ray_x[i] = ray[0];
+                ray_y[i] = ray[1];
+            }
+        }
+
+        bins = new int[size];
+        gather = new int[size];
+        weights = interpolation == Interpolation.BILINEAR ? new int[size] : null;
+        invalidate();
+    }
+
+    public Intrinsics getDepthIntrinsics() {
+        return depth_intrin;
+    }
+
+    public Interpolation getInterpolation() {
+        return interpolation;
+    }
+
+    /**
+     * Force the gather table to be rebuilt on the next frame
+     */
+    public void invalidate() {
+        Arrays.fill(bins, NO_BIN);
+    }
+
+    private int binOf(char depth_value) {
+        return bin_scale == 0 ? 0 : (int) (bin_scale / depth_value);
+    }
+
+    // Recompute the gather entry of depth pixel i for the center depth of the bin
+    private void refresh(int i, int bin) {
+        bins[i] = bin;
+        final float z = bin_scale == 0 ? 1 : bin_scale / (bin + 0.5f) * depth_scale;
+        point[0] = ray_x[i] * z;
+        point[1] = ray_y[i] * z;
+        point[2] = z;
+        depth_to_color.transform(color_point, point);
+        color_intrin.project(color_pixel, color_point);
+
+        final int color_width = color_intrin.width;
+        final int color_height = color_intrin.height;
+        if (interpolation == Interpolation.NEAREST) {
+            final int cx = Math.round(color_pixel[0]), cy = Math.round(color_pixel[1]);
+            gather[i] = cx < 0 || cy < 0 || cx >= color_width || cy >= color_height ? -1 : (cy * color_width + cx) * channels;
+        } else {
+            // Same coverage as nearest sampling, samples within half a pixel of the border are clamped onto it
+            if (color_pixel[0] < -0.5f || color_pixel[1] < -0.5f
+                    || color_pixel[0] >= color_width - 0.5f || color_pixel[1] >= color_height - 0.5f) {
+                gather[i] = -1;
+                return;
+            }
+            final float fx = Math.min(Math.max(color_pixel[0], 0), color_width - 1);
+            final float fy = Math.min(Math.max(color_pixel[1], 0), color_height - 1);
+            final int cx = Math.min((int) fx, color_width - 2), cy = Math.min((int) fy, color_height - 2);
+            final int wx = Math.round((fx - cx) * WEIGHT_ONE), wy = Math.round((fy - cy) * WEIGHT_ONE);
+            gather[i] = (cy * color_width + cx) * channels;
+            weights[i] = wx << 16 | wy;
+        }
+    }
+
+    /**
+     * Resample a color image to the depth image
+     *
+     * @param depth  z16 depth image, depth width x height
+     * @param color  color image, color width x height x channels
+     * @param out    resampled color image, depth width x height x channels, black where there is no depth
+     */
+    public void resample(char depth[], byte color[], byte out[]) {
+        final int size = depth_intrin.width * depth_intrin.height;
+        final int channels = this.channels;
+        final int row = color_intrin.width * channels;
+        for (int i = 0, o = 0; i < size; ++i, o += channels) {
+            final char depth_value = depth[i];
+            final int g = gatherIndex(i, depth_value);
+            if (g < 0) {
+                for (int c = 0; c < channels; ++c) out[o + c] = 0;
+            } else if (interpolation == Interpolation.NEAREST) {
+                for (int c = 0; c < channels; ++c) out[o + c] = color[g + c];
+            } else {
+                final int w = weights[i];
+                final int wx = w >>> 16, wy = w & 0xFFFF;
+                for (int c = 0; c < channels; ++c) {
+                    final int a = color[g + c] & 0xFF, b = color[g + channels + c] & 0xFF;
+                    final int d = color[g + row + c] & 0xFF, e = color[g + row + channels + c] & 0xFF;
+                    out[o + c] = (byte) lerp(lerp(a, b, wx), lerp(d, e, wx), wy);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resample a color image to the depth image, directly between direct buffers (e.g. frame data)
+     */
+    public void resample(CharBuffer depth, ByteBuffer color, ByteBuffer out) {
+        final int size = depth_intrin.width * depth_intrin.height;
+        final int channels = this.channels;
+        final int row = color_intrin.width * channels;
+        for (int i = 0, o = 0; i < size; ++i, o += channels) {
+            final char depth_value = depth.get(i);
+            final int g = gatherIndex(i, depth_value);
+            if (g < 0) {
+                for (int c = 0; c < channels; ++c) out.put(o + c, (byte) 0);
+            } else if (interpolation == Interpolation.NEAREST) {
+                for (int c = 0; c < channels; ++c) out.put(o + c, color.get(g + c));
+            } else {
+                final int w = weights[i];
+                final int wx = w >>> 16, wy = w & 0xFFFF;
+                for (int c = 0; c < channels; ++c) {
+                    final int a = color.get(g + c) & 0xFF, b = color.get(g + channels + c) & 0xFF;
+                    final int d = color.get(g + row + c) & 0xFF, e = color.get(g + row + channels + c) & 0xFF;
+                    out.put(o + c, (byte) lerp(lerp(a, b, wx), lerp(d, e, wx), wy));
+                }
+            }
+        }
+    }
+
+    private int gatherIndex(int i, char depth_value) {
+        if (depth_value == 0) return -1;
+        final int bin = binOf(depth_value);
+        if (bins[i] != bin) {
+            refresh(i, bin);
+        }
+        return gather[i];
+    }
+
+    private static int lerp(int a, int b, int w) {
+        return a + ((b - a) * w + (WEIGHT_ONE >> 1) >> 8);
+    }
+}
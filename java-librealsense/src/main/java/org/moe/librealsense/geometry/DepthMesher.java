@@ -0,0 +1,240 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.geometry;
+
+import org.moe.librealsense.Intrinsics;
+import org.moe.librealsense.processing.Stripes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Triangulates the organized grid of a depth frame into an indexed mesh. Every pixel is a vertex, deprojected along
+ * a precomputed ray, and every 2x2 block of pixels contributes up to two triangles. Triangles with a missing depth or
+ * with a depth step above the threshold (an occlusion edge rather than a surface) are left out.
+ * <p>
+ * Vertices and indices live in direct native-order buffers which can be handed to glVertexPointer and glDrawElements
+ * as they are. Vertex positions are rewritten every frame, the index buffer only when the set of kept triangles
+ * changed.
+ */
+public class DepthMesher {
+    private static final int UPPER = 1;
+    private static final int LOWER = 2;
+
+    private final int width;
+    private final int height;
+    private final float depth_scale;
+
+    // Deprojection rays of the pixel centers
+    private final float ray_x[];
+    private final float ray_y[];
+
+    private int max_step;
+
+    private final FloatBuffer vertices;
+    private final IntBuffer indices;
+    private int index_count;
+
+    // Kept triangles per grid cell, (width - 1) x (height - 1)
+    private final byte cells[];
+    private final boolean stripe_changed[];
+    private boolean dirty = true;
+
+    /**
+     * @param depth_scale  depth in meters corresponding to a depth value of 1
+     */
+    public DepthMesher(Intrinsics depth_intrin, float depth_scale) {
+        if (depth_intrin.width < 2 || depth_intrin.height < 2) {
+            throw new IllegalArgumentException("Invalid frame size " + depth_intrin.width + "x" + depth_intrin.height);
+        }
+        this.width = depth_intrin.width;
+        this.height = depth_intrin.height;
+        this.depth_scale = depth_scale;
+        setMaxDepthStep(0.05f);
+
+        final int count = width * height;
+        ray_x = new float[count];
+        ray_y = new float[count];
+        final float pixel[] = new float[2];
+        final float ray[] = new float[3];
+        for (int y = 0, i = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x, ++i) {
+                pixel[0] = x;
+                pixel[1] = y;
+                depth_intrin.deproject(ray, pixel, 1);
+                ray_x[i] = ray[0];
+                ray_y[i] = ray[1];
+            }
+        }
+
+        final int cell_count = (width - 1) * (height - 1);
+        vertices = ByteBuffer.allocateDirect(count * 3 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        indices = ByteBuffer.allocateDirect(cell_count * 6 * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        cells = new byte[cell_count];
+        stripe_changed = new boolean[height - 1];
+    }
+
+    /**
+     * Largest depth difference in meters between the corners of a kept triangle, default 0.05
+     */
+    public void setMaxDepthStep(float meters) {
+        this.max_step = (int) (meters / depth_scale);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Vertex positions in meters, three floats for each pixel in row-major order. Pixels without depth are at the
+     * origin and not referenced by any triangle.
+     */
+    public FloatBuffer getVertices() {
+        return vertices;
+    }
+
+    public int getVertexCount() {
+        return width * height;
+    }
+
+    /**
+     * Vertex indices, three per triangle, valid up to {@link #getIndexCount()}
+     */
+    public IntBuffer getIndices() {
+        return indices;
+    }
+
+    public int getIndexCount() {
+        return index_count;
+    }
+
+    /**
+     * Mesh a z16 depth frame on the calling thread. Returns true if the index buffer was rebuilt.
+     */
+    public boolean update(char depth[]) {
+        return updateParallel(depth, 1);
+    }
+
+    /**
+     * Mesh a z16 depth frame with stripes of rows processed in parallel. Returns true if the index buffer was rebuilt.
+     */
+    public boolean updateParallel(char depth[], int stripes) {
+        if (depth.length < width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " depth values");
+        }
+        final int count = Math.max(1, Math.min(stripes, height - 1));
+        Stripes.run(height - 1, count, (s, y0, y1) -> {
+            // The last stripe also owns the vertices of the last row, which has no cells
+            updateVertices(depth, y0, s == count - 1 ? height : y1);
+            stripe_changed[s] = updateCells(depth, y0, y1);
+        });
+
+        boolean changed = dirty;
+        for (int s = 0; s < count; ++s) {
+            changed |= stripe_changed[s];
+        }
+        if (changed) {
+            rebuildIndices();
+            dirty = false;
+        }
+        return changed;
+    }
+
+    private void updateVertices(char depth[], int y0, int y1) {
+        final float scale = depth_scale;
+        for (int i = y0 * width, end = y1 * width; i < end; ++i) {
+            final float z = depth[i] * scale;
+            vertices.put(i * 3, ray_x[i] * z).put(i * 3 + 1, ray_y[i] * z).put(i * 3 + 2, z);
+        }
+    }
+
+    // Recomputes the kept triangles of cell rows [y0, y1), returns true if any changed
+    private boolean updateCells(char depth[], int y0, int y1) {
+        final int width = this.width;
+        final int max_step = this.max_step;
+        boolean changed = false;
+        for (int y = y0; y < y1; ++y) {
+            for (int x = 0, i = y * width, c = y * (width - 1); x < width - 1; ++x, ++i, ++c) {
+                final int d00 = depth[i], d01 = depth[i + 1], d10 = depth[i + width], d11 = depth[i + width + 1];
+                int mask = 0;
+                if (connected(d00, d01, d10, max_step)) mask |= UPPER;
+                if (connected(d01, d11, d10, max_step)) mask |= LOWER;
+                if (cells[c] != mask) {
+                    cells[c] = (byte) mask;
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static boolean connected(int a, int b, int c, int max_step) {
+        if (a == 0 || b == 0 || c == 0) return false;
+        final int min = Math.min(a, Math.min(b, c));
+        final int max = Math.max(a, Math.max(b, c));
+        return max - min <= max_step;
+    }
+
+    private void rebuildIndices() {
+        final int width = this.width;
+        int n = 0;
+        for (int y = 0, c = 0; y < height - 1; ++y) {
+            for (int x = 0, i = y * width; x < width - 1; ++x, ++i, ++c) {
+                final int mask = cells[c];
+                if ((mask & UPPER) != 0) {
+                    indices.put(n, i).put(n + 1, i + width).put(n + 2, i + 1);
+                    n += 3;
+                }
+                if ((mask & LOWER) != 0) {
+                    indices.put(n, i + 1).put(n + 1, i + width).put(n + 2, i + width + 1);
+                    n += 3;
+                }
+            }
+        }
+        index_count = n;
+    }
+
+    /**
+     * Write the current mesh as Wavefront OBJ, only vertices used by triangles are written
+     */
+    public void writeObj(Appendable out) throws IOException {
+        final int remap[] = new int[width * height];
+        int next = 0;
+        for (int k = 0; k < index_count; ++k) {
+            final int i = indices.get(k);
+            if (remap[i] == 0) {
+                remap[i] = ++next;
+                out.append("v ").append(Float.toString(vertices.get(i * 3))).append(' ')
+                        .append(Float.toString(vertices.get(i * 3 + 1))).append(' ')
+                        .append(Float.toString(vertices.get(i * 3 + 2))).append('\n');
+            }
+        }
+        for (int k = 0; k < index_count; k += 3) {
+            out.append("f ").append(Integer.toString(remap[indices.get(k)])).append(' ')
+                    .append(Integer.toString(remap[indices.get(k + 1)])).append(' ')
+                    .append(Integer.toString(remap[indices.get(k + 2)])).append('\n');
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.geometry;
+
+import org.moe.librealsense.Extrinsics;
+import org.moe.librealsense.Intrinsics;
+import org.moe.librealsense.processing.Stripes;
+
+import java.util.Arrays;
+
+/**
+ * Produces depth in the viewpoint and resolution of the color camera (what RS.stream.depth_aligned_to_color describes).
+ * Every depth pixel is deprojected, moved into color space and splatted over the footprint of its corners in the color
+ * image. Where splats overlap the nearest depth wins, as in a z-buffer.
+ * <p>
+ * Deprojection rays of the pixel corners depend only on the depth intrinsics and are precomputed, so the per-pixel
+ * work is one scale, one rigid transform and two projections.
+ */
+public class DepthToColorAligner {
+    private final Intrinsics depth_intrin;
+    private final Extrinsics depth_to_color;
+    private final Intrinsics color_intrin;
+    private final float depth_scale;
+
+    // Deprojection rays of the pixel corner grid, (width + 1) x (height + 1)
+    private final float corner_x[];
+    private final float corner_y[];
+
+    // Parallel mode state, one z-buffer per stripe and the range of color rows each stripe touched
+    private char stripe_zbuf[][];
+    private int stripe_min_row[];
+    private int stripe_max_row[];
+
+    /**
+     * @param depth_scale  depth in meters corresponding to a depth value of 1
+     */
+    public DepthToColorAligner(Intrinsics depth_intrin, Extrinsics depth_to_color, Intrinsics color_intrin,
+                               float depth_scale) {
+        if (depth_intrin == null || depth_to_color == null || color_intrin == null) {
+            throw new NullPointerException();
+        }
+        this.depth_intrin = depth_intrin;
+        this.depth_to_color = depth_to_color;
+        this.color_intrin = color_intrin;
+        this.depth_scale = depth_scale;
+
+        final int cw = depth_intrin.width + 1;
+        final int ch = depth_intrin.height + 1;
+        corner_x = new float[cw * ch];
+        corner_y = new float[cw * ch];
+        final float pixel[] = new float[2];
+        final float ray[] = new float[3];
+        for (int y = 0; y < ch; ++y) {
+            for (int x = 0; x < cw; ++x) {
+                pixel[0] = x - 0.5f;
+                pixel[1] = y - 0.5f;
+                depth_intrin.deproject(ray, pixel, 1);
+                corner_x[y * cw + x] = ray[0];
+                corner_y[y * cw + x] = ray[1];
+            }
+        }
+    }
+
+    public Intrinsics getDepthIntrinsics() {
+        return depth_intrin;
+    }
+
+    public Intrinsics getColorIntrinsics() {
+        return color_intrin;
+    }
+
+    /**
+     * Align a depth frame on the calling thread
+     *
+     * @param depth  z16 depth image, depth width x height
+     * @param out    aligned z16 depth image, color width x height, zero where no depth maps
+     */
+    public void align(char depth[], char out[]) {
+        checkSizes(depth, out);
+        Arrays.fill(out, (char) 0);
+        final int rows[] = new int[2];
+        splat(depth, 0, depth_intrin.height, out, rows);
+    }
+
+    /**
+     * Align a depth frame with stripes of depth rows splatted in parallel into private z-buffers, which are merged
+     * into the output afterwards. Only the color rows a stripe touched are merged and cleared.
+     */
+    public void alignParallel(char depth[], char out[], int stripes) {
+        checkSizes(depth, out);
+        final int count = Math.max(1, Math.min(stripes, depth_intrin.height));
+        if (count == 1) {
+            align(depth, out);
+            return;
+        }
+        final int size = color_intrin.width * color_intrin.height;
+        if (stripe_zbuf == null || stripe_zbuf.length != count) {
+            stripe_zbuf = new char[count][size];
+            stripe_min_row = new int[count];
+            stripe_max_row = new int[count];
+        }
+
+        Stripes.run(depth_intrin.height, count, (s, y0, y1) -> {
+            final int rows[] = new int[2];
+            splat(depth, y0, y1, stripe_zbuf[s], rows);
+            stripe_min_row[s] = rows[0];
+            stripe_max_row[s] = rows[1];
+        });
+
+        final int width = color_intrin.width;
+        Stripes.run(color_intrin.height, count, (m, y0, y1) -> {
+            Arrays.fill(out, y0 * width, y1 * width, (char) 0);
+            for (int s = 0; s < count; ++s) {
+                final int from = Math.max(y0, stripe_min_row[s]);
+                final int to = Math.min(y1, stripe_max_row[s] + 1);
+                if (from >= to) continue;
+                final char zbuf[] = stripe_zbuf[s];
+                for (int i = from * width, end = to * width; i < end; ++i) {
+                    final char z = zbuf[i];
+                    if (z != 0) {
+                        final char o = out[i];
+                        if (o == 0 || z < o) out[i] = z;
+                        zbuf[i] = 0;
+                    }
+                }
+            }
+        });
+    }
+
+    private void checkSizes(char depth[], char out[]) {
+        if (depth.length < depth_intrin.width * depth_intrin.height) {
+            throw new IllegalArgumentException("Depth image is too small");
+        }
+        if (out.length < color_intrin.width * color_intrin.height) {
+            throw new IllegalArgumentException("Output image is too small");
+        }
+    }
+
+    // Splats depth rows [y0, y1) into zbuf and stores the range of touched color rows in rows
+    private void splat(char depth[], int y0, int y1, char zbuf[], int rows[]) {
+        final int width = depth_intrin.width;
+        final int cw = width + 1;
+        final int color_width = color_intrin.width;
+        final int color_height = color_intrin.height;
+        final float corner_x[] = this.corner_x;
+        final float corner_y[] = this.corner_y;
+        final float depth_scale = this.depth_scale;
+
+        final float point[] = new float[3];
+        final float color_point[] = new float[3];
+        final float color_pixel0[] = new float[2];
+        final float color_pixel1[] = new float[2];
+
+        int min_row = Integer.MAX_VALUE;
+        int max_row = -1;
+        for (int dy = y0; dy < y1; ++dy) {
+            for (int dx = 0; dx < width; ++dx) {
+                final char depth_value = depth[dy * width + dx];
+                if (depth_value == 0) continue;
+                final float z = depth_value * depth_scale;
+
+                // Project the top left and bottom right corners of the depth pixel into the color image
+                final int c0 = dy * cw + dx;
+                point[0] = corner_x[c0] * z;
+                point[1] = corner_y[c0] * z;
+                point[2] = z;
+                depth_to_color.transform(color_point, point);
+                color_intrin.project(color_pixel0, color_point);
+
+                final int c1 = c0 + cw + 1;
+                point[0] = corner_x[c1] * z;
+                point[1] = corner_y[c1] * z;
+                depth_to_color.transform(color_point, point);
+                color_intrin.project(color_pixel1, color_point);
+
+                int x0 = (int) (Math.min(color_pixel0[0], color_pixel1[0]) + 0.5f);
+                int x1 = (int) (Math.max(color_pixel0[0], color_pixel1[0]) + 0.5f);
+                int yy0 = (int) (Math.min(color_pixel0[1], color_pixel1[1]) + 0.5f);
+                int yy1 = (int) (Math.max(color_pixel0[1], color_pixel1[1]) + 0.5f);
+                if (x1 < 0 || yy1 < 0 || x0 >= color_width || yy0 >= color_height) continue;
+                if (x0 < 0) x0 = 0;
+                if (yy0 < 0) yy0 = 0;
+                if (x1 >= color_width) x1 = color_width - 1;
+                if (yy1 >= color_height) yy1 = color_height - 1;
+
+                for (int y = yy0; y <= yy1; ++y) {
+                    for (int i = y * color_width + x0, end = y * color_width + x1; i <= end; ++i) {
+                        final char o = zbuf[i];
+                        if (o == 0 || depth_value < o) zbuf[i] = depth_value;
+                    }
+                }
+                if (yy0 < min_row) min_row = yy0;
+                if (yy1 > max_row) max_row = yy1;
+            }
+        }
+        rows[0] = min_row;
+        rows[1] = max_row;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.geometry;
+
+import org.moe.librealsense.processing.Stripes;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Estimates a surface normal for every valid pixel of an organized point cloud (xyz32f, points without depth at
+ * z = 0) from the cross product of the horizontal and vertical neighbor differences.
+ * <p>
+ * Where a neighbor has no depth or lies across a depth discontinuity the one-sided difference towards the other
+ * neighbor is used instead; pixels without a usable pair get a zero normal. Normals are unit length, point towards the
+ * camera and are written into reusable struct-of-arrays buffers.
+ */
+public class NormalEstimator {
+    private final int width;
+    private final int height;
+
+    private int step = 1;
+    private float max_depth_change = 0.05f;
+
+    private float points[];
+    private final float normal_x[];
+    private final float normal_y[];
+    private final float normal_z[];
+
+    public NormalEstimator(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid cloud size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        normal_x = new float[width * height];
+        normal_y = new float[width * height];
+        normal_z = new float[width * height];
+    }
+
+    /**
+     * Distance in pixels of the neighbors used for the differences, larger steps smooth out depth noise. Default 1.
+     */
+    public void setStep(int step) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("Invalid step " + step);
+        }
+        this.step = step;
+    }
+
+    /**
+     * Neighbors whose depth differs by more than this fraction of the center depth are treated as invalid, default 0.05
+     */
+    public void setMaxDepthChange(float max_depth_change) {
+        this.max_depth_change = max_depth_change;
+    }
+
+    public float[] getNormalX() {
+        return normal_x;
+    }
+
+    public float[] getNormalY() {
+        return normal_y;
+    }
+
+    public float[] getNormalZ() {
+        return normal_z;
+    }
+
+    /**
+     * Compute normals from a cloud copied from a native points frame
+     */
+    public void compute(FloatBuffer xyz, int stripes) {
+        final int count = width * height * 3;
+        if (points == null) {
+            points = new float[count];
+        }
+        xyz.get(points, 0, count);
+        xyz.position(xyz.position() - count);
+        computeParallel(points, stripes);
+    }
+
+    /**
+     * Compute normals of width x height interleaved points on the calling thread
+     */
+    public void compute(float xyz[]) {
+        computeParallel(xyz, 1);
+    }
+
+    /**
+     * Compute normals with stripes of rows processed in parallel
+     */
+    public void computeParallel(float xyz[], int stripes) {
+        if (xyz.length < width * height * 3) {
+            throw new IllegalArgumentException("Expected " + width * height + " points");
+        }
+        Stripes.run(height, stripes, (s, y0, y1) -> computeRows(xyz, y0, y1));
+    }
+
+    private void computeRows(float xyz[], int y0, int y1) {
+        final int width = this.width;
+        final int height = this.height;
+        final int step = this.step;
+        final float max_change = this.max_depth_change;
+        final float[] normal_x = this.normal_x;
+        final float[] normal_y = this.normal_y;
+        final float[] normal_z = this.normal_z;
+
+        for (int y = y0; y < y1; ++y) {
+            for (int x = 0, i = y * width; x < width; ++x, ++i) {
+                final int c = i * 3;
+                final float cz = xyz[c + 2];
+                normal_x[i] = normal_y[i] = normal_z[i] = 0;
+                if (cz <= 0) continue;
+                final float limit = cz * max_change;
+
+                // Horizontal tangent, central difference if both sides are usable
+                final int l = x >= step ? c - step * 3 : -1;
+                final int r = x + step < width ? c + step * 3 : -1;
+                final boolean lv = l >= 0 && usable(xyz[l + 2], cz, limit);
+                final boolean rv = r >= 0 && usable(xyz[r + 2], cz, limit);
+                if (!lv && !rv) continue;
+                final int h0 = lv ? l : c, h1 = rv ? r : c;
+                final float ux = xyz[h1] - xyz[h0], uy = xyz[h1 + 1] - xyz[h0 + 1], uz = xyz[h1 + 2] - xyz[h0 + 2];
+
+                // Vertical tangent
+                final int u = y >= step ? c - step * width * 3 : -1;
+                final int d = y + step < height ? c + step * width * 3 : -1;
+                final boolean uv = u >= 0 && usable(xyz[u + 2], cz, limit);
+                final boolean dv = d >= 0 && usable(xyz[d + 2], cz, limit);
+                if (!uv && !dv) continue;
+                final int v0 = uv ? u : c, v1 = dv ? d : c;
+                final float vx = xyz[v1] - xyz[v0], vy = xyz[v1 + 1] - xyz[v0 + 1], vz = xyz[v1 + 2] - xyz[v0 + 2];
+
+                float nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+                final float len2 = nx * nx + ny * ny + nz * nz;
+                if (len2 <= 0) continue;
+                // Face the camera at the origin
+                float scale = (float) (1 / Math.sqrt(len2));
+                if (nx * xyz[c] + ny * xyz[c + 1] + nz * cz > 0) scale = -scale;
+                normal_x[i] = nx * scale;
+                normal_y[i] = ny * scale;
+                normal_z[i] = nz * scale;
+            }
+        }
+    }
+
+    private static boolean usable(float z, float cz, float limit) {
+        return z > 0 && z - cz <= limit && cz - z <= limit;
+    }
+}
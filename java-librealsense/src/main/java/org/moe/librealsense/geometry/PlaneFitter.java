@@ -0,0 +1,431 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.geometry;
+
+import org.moe.librealsense.processing.Stripes;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Finds the dominant plane of an organized point cloud (xyz32f as produced by deprojecting a depth frame, points
+ * without depth at z = 0) with RANSAC.
+ * <p>
+ * Hypotheses are built from a random valid point and two valid points from its pixel neighborhood, which in an
+ * organized cloud are very likely on the same surface. They are generated in batches from a seeded generator and each
+ * batch is scored in parallel against a subsample of the cloud, so results only depend on the seed and the stripe
+ * count. The search stops once the best inlier ratio makes further hypotheses unlikely to improve it. The winner is
+ * refined with a least squares fit to its inliers and reported with an inlier bitmask over all pixels.
+ */
+public class PlaneFitter {
+    private static final int BATCH = 8;
+    private static final int NEIGHBOR_TRIES = 8;
+    private static final int REFINEMENTS = 4;
+
+    public static class Plane {
+        public final float a;     /* unit normal x */
+        public final float b;     /* unit normal y */
+        public final float c;     /* unit normal z */
+        public final float d;     /* offset, a * x + b * y + c * z + d = 0 on the plane */
+        public final int inliers; /* number of points within the distance threshold */
+
+        public Plane(float a, float b, float c, float d, int inliers) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            this.inliers = inliers;
+        }
+
+        /**
+         * Signed distance of a point from the plane, in meters
+         */
+        public float distance(float x, float y, float z) {
+            return a * x + b * y + c * z + d;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.4fx + %.4fy + %.4fz + %.4f = 0 (%d inliers)", a, b, c, d, inliers);
+        }
+    }
+
+    private final int width;
+    private final int height;
+
+    private float threshold = 0.01f;
+    private int max_iterations = 512;
+    private double confidence = 0.99;
+    private int neighbor_radius = 24;
+    private int sample_stride = 8;
+    private long seed = 0;
+    private int stripes = Stripes.defaultCount();
+
+    private float points[];
+    private final int valid[];
+    private int valid_count;
+    private final int sample[];
+    private final float sample_xyz[];
+    private int sample_count;
+    private final float hypotheses[] = new float[BATCH * 4];
+    private final int scores[] = new int[BATCH];
+    private final long inliers[];
+    private final int word_counts[];
+
+    public PlaneFitter(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid cloud size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        valid = new int[width * height];
+        sample = new int[width * height];
+        sample_xyz = new float[width * height * 3];
+        inliers = new long[(width * height + 63) >>> 6];
+        word_counts = new int[inliers.length];
+    }
+
+    /**
+     * Maximum distance of an inlier from the plane in meters, default 0.01
+     */
+    public void setThreshold(float threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Upper bound on the number of hypotheses, default 512
+     */
+    public void setMaxIterations(int max_iterations) {
+        this.max_iterations = max_iterations;
+    }
+
+    /**
+     * Probability of having drawn at least one all-inlier sample at which the search stops early, default 0.99
+     */
+    public void setConfidence(double confidence) {
+        this.confidence = confidence;
+    }
+
+    /**
+     * Half size in pixels of the window the second and third point of a sample are drawn from, default 24
+     */
+    public void setNeighborRadius(int neighbor_radius) {
+        this.neighbor_radius = neighbor_radius;
+    }
+
+    /**
+     * Hypotheses are scored against every n-th valid point, default 8
+     */
+    public void setSampleStride(int sample_stride) {
+        if (sample_stride <= 0) {
+            throw new IllegalArgumentException("Invalid stride " + sample_stride);
+        }
+        this.sample_stride = sample_stride;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Number of parallel stripes used for scoring, 1 runs on the calling thread
+     */
+    public void setStripes(int stripes) {
+        this.stripes = stripes;
+    }
+
+    /**
+     * Bitmask of the inliers of the last fit, bit (i &amp; 63) of word i / 64 for pixel i. Overwritten by the next fit.
+     */
+    public long[] getInliers() {
+        return inliers;
+    }
+
+    public static boolean isSet(long mask[], int i) {
+        return (mask[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Fit a plane to a cloud copied from a native points frame
+     */
+    public Plane fit(FloatBuffer xyz, long ignore[]) {
+        final int count = width * height * 3;
+        if (points == null) {
+            points = new float[count];
+        }
+        xyz.get(points, 0, count);
+        xyz.position(xyz.position() - count);
+        return fit(points, ignore);
+    }
+
+    public Plane fit(float xyz[]) {
+        return fit(xyz, null);
+    }
+
+    /**
+     * Fit a plane to width x height interleaved points. Pixels set in the optional ignore mask (of the same layout as
+     * {@link #getInliers()}) are skipped, which allows extracting several planes one after another. Returns null if
+     * there are too few points.
+     */
+    public Plane fit(float xyz[], long ignore[]) {
+        if (xyz.length < width * height * 3) {
+            throw new IllegalArgumentException("Expected " + width * height + " points");
+        }
+        collect(xyz, ignore);
+        if (valid_count < 3) {
+            Arrays.fill(inliers, 0);
+            return null;
+        }
+
+        // Hypothesize and score in batches until the best plane is unlikely to be beaten
+        final SplittableRandom random = new SplittableRandom(seed);
+        final float best[] = new float[4];
+        int best_score = -1;
+        final double log_miss = Math.log(1 - confidence);
+        for (int iteration = 0; iteration < max_iterations; iteration += BATCH) {
+            final int batch = Math.min(BATCH, max_iterations - iteration);
+            for (int h = 0; h < batch; ++h) {
+                hypothesize(xyz, random, h);
+            }
+            Stripes.run(batch, stripes, (s, h0, h1) -> {
+                for (int h = h0; h < h1; ++h) {
+                    scores[h] = score(h);
+                }
+            });
+            for (int h = 0; h < batch; ++h) {
+                if (scores[h] > best_score) {
+                    best_score = scores[h];
+                    System.arraycopy(hypotheses, h * 4, best, 0, 4);
+                }
+            }
+
+            // Neighbors are usually on the seed's surface, so a sample is good about as often as its seed is an
+            // inlier. Without any supported hypothesis yet there is no estimate, keep drawing.
+            if (best_score <= 0) continue;
+            final double ratio = (double) best_score / sample_count;
+            if (ratio >= 1 || iteration + batch >= log_miss / Math.log(1 - ratio)) {
+                break;
+            }
+        }
+        if (best_score <= 0) {
+            Arrays.fill(inliers, 0);
+            return null;
+        }
+
+        // Inliers of a slightly tilted hypothesis are biased towards it, so refit on the subsample until the inlier
+        // set stops growing, then once on all points
+        for (int i = 0, inlier_count = 0; i < REFINEMENTS; ++i) {
+            final int n = refine(xyz, best, sample, sample_count);
+            if (n <= inlier_count) break;
+            inlier_count = n;
+        }
+        refine(xyz, best, valid, valid_count);
+        final int count = mark(xyz, ignore, best);
+        return new Plane(best[0], best[1], best[2], best[3], count);
+    }
+
+    // Lists valid points and the subsample used for scoring, whose coordinates are also packed for streaming access
+    private void collect(float xyz[], long ignore[]) {
+        valid_count = 0;
+        sample_count = 0;
+        int skip = 0;
+        for (int i = 0, n = width * height; i < n; ++i) {
+            if (xyz[i * 3 + 2] <= 0 || (ignore != null && isSet(ignore, i))) continue;
+            if (skip == 0) {
+                System.arraycopy(xyz, i * 3, sample_xyz, sample_count * 3, 3);
+                sample[sample_count++] = i;
+                skip = sample_stride;
+            }
+            --skip;
+            valid[valid_count++] = i;
+        }
+    }
+
+    // Draws a sample and stores its plane as hypothesis h, a degenerate sample yields an all zero plane
+    private void hypothesize(float xyz[], SplittableRandom random, int h) {
+        final int o = h * 4;
+        hypotheses[o] = hypotheses[o + 1] = hypotheses[o + 2] = hypotheses[o + 3] = 0;
+
+        final int i = valid[random.nextInt(valid_count)];
+        final int j = neighbor(xyz, random, i);
+        final int k = neighbor(xyz, random, i);
+        if (j < 0 || k < 0 || j == k) return;
+
+        final float ux = xyz[j * 3] - xyz[i * 3], uy = xyz[j * 3 + 1] - xyz[i * 3 + 1], uz = xyz[j * 3 + 2] - xyz[i * 3 + 2];
+        final float vx = xyz[k * 3] - xyz[i * 3], vy = xyz[k * 3 + 1] - xyz[i * 3 + 1], vz = xyz[k * 3 + 2] - xyz[i * 3 + 2];
+        float nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+        final float norm = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (norm < 1e-12f) return;
+        nx /= norm;
+        ny /= norm;
+        nz /= norm;
+        hypotheses[o] = nx;
+        hypotheses[o + 1] = ny;
+        hypotheses[o + 2] = nz;
+        hypotheses[o + 3] = -(nx * xyz[i * 3] + ny * xyz[i * 3 + 1] + nz * xyz[i * 3 + 2]);
+    }
+
+    // Random valid pixel other than i within the neighbor window, or -1
+    private int neighbor(float xyz[], SplittableRandom random, int i) {
+        final int r = neighbor_radius;
+        final int x = i % width, y = i / width;
+        for (int t = 0; t < NEIGHBOR_TRIES; ++t) {
+            final int nx = x + random.nextInt(-r, r + 1);
+            final int ny = y + random.nextInt(-r, r + 1);
+            if (nx < 0 || ny < 0 || nx >= width || ny >= height) continue;
+            final int n = ny * width + nx;
+            if (n != i && xyz[n * 3 + 2] > 0) return n;
+        }
+        return -1;
+    }
+
+    private int score(int h) {
+        final float a = hypotheses[h * 4], b = hypotheses[h * 4 + 1], c = hypotheses[h * 4 + 2], d = hypotheses[h * 4 + 3];
+        if (a == 0 && b == 0 && c == 0) return 0;
+        final float t = threshold;
+        int count = 0;
+        final float points[] = sample_xyz;
+        for (int p = 0, end = sample_count * 3; p < end; p += 3) {
+            final float dist = a * points[p] + b * points[p + 1] + c * points[p + 2] + d;
+            if (dist < t && dist > -t) ++count;
+        }
+        return count;
+    }
+
+    // Least squares plane through the inliers among the listed points, replaces the given plane unless the inliers are
+    // degenerate. Returns the number of inliers the fit was made from.
+    private int refine(float xyz[], float plane[], int points[], int count) {
+        final float t = threshold;
+        // Moments about a point on the plane, which keeps them small enough for a single pass
+        final float ox = -plane[0] * plane[3], oy = -plane[1] * plane[3], oz = -plane[2] * plane[3];
+        double sx = 0, sy = 0, sz = 0, sxx = 0, sxy = 0, sxz = 0, syy = 0, syz = 0, szz = 0;
+        int n = 0;
+        for (int v = 0; v < count; ++v) {
+            final int p = points[v] * 3;
+            final float dist = plane[0] * xyz[p] + plane[1] * xyz[p + 1] + plane[2] * xyz[p + 2] + plane[3];
+            if (dist < t && dist > -t) {
+                final double dx = xyz[p] - ox, dy = xyz[p + 1] - oy, dz = xyz[p + 2] - oz;
+                sx += dx;
+                sy += dy;
+                sz += dz;
+                sxx += dx * dx;
+                sxy += dx * dy;
+                sxz += dx * dz;
+                syy += dy * dy;
+                syz += dy * dz;
+                szz += dz * dz;
+                ++n;
+            }
+        }
+        if (n < 3) return n;
+        final double mx = sx / n, my = sy / n, mz = sz / n;
+        final double cx = ox + mx, cy = oy + my, cz = oz + mz;
+
+        // Covariance about the centroid
+        final double cov[] = {
+                sxx - n * mx * mx, sxy - n * mx * my, sxz - n * mx * mz,
+                sxy - n * mx * my, syy - n * my * my, syz - n * my * mz,
+                sxz - n * mx * mz, syz - n * my * mz, szz - n * mz * mz,
+        };
+
+        final double normal[] = new double[3];
+        if (!smallestEigenvector(cov, normal)) return n;
+        // Keep the orientation of the hypothesis
+        if (normal[0] * plane[0] + normal[1] * plane[1] + normal[2] * plane[2] < 0) {
+            normal[0] = -normal[0];
+            normal[1] = -normal[1];
+            normal[2] = -normal[2];
+        }
+        plane[0] = (float) normal[0];
+        plane[1] = (float) normal[1];
+        plane[2] = (float) normal[2];
+        plane[3] = (float) -(normal[0] * cx + normal[1] * cy + normal[2] * cz);
+        return n;
+    }
+
+    // Eigenvector of the smallest eigenvalue of a symmetric 3x3 matrix (row-major, destroyed) by Jacobi rotations
+    private static boolean smallestEigenvector(double m[], double out[]) {
+        final double v[] = {1, 0, 0, 0, 1, 0, 0, 0, 1};
+        for (int sweep = 0; sweep < 16; ++sweep) {
+            final double off = m[1] * m[1] + m[2] * m[2] + m[5] * m[5];
+            if (off < 1e-30) break;
+            for (int p = 0; p < 2; ++p) {
+                for (int q = p + 1; q < 3; ++q) {
+                    final double apq = m[p * 3 + q];
+                    if (Math.abs(apq) < 1e-30) continue;
+                    final double theta = (m[q * 3 + q] - m[p * 3 + p]) / (2 * apq);
+                    final double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+                    final double c = 1 / Math.sqrt(t * t + 1), s = t * c;
+                    // m = J^T m J, v = v J
+                    for (int k = 0; k < 3; ++k) {
+                        final double mkp = m[k * 3 + p], mkq = m[k * 3 + q];
+                        m[k * 3 + p] = c * mkp - s * mkq;
+                        m[k * 3 + q] = s * mkp + c * mkq;
+                    }
+                    for (int k = 0; k < 3; ++k) {
+                        final double mpk = m[p * 3 + k], mqk = m[q * 3 + k];
+                        m[p * 3 + k] = c * mpk - s * mqk;
+                        m[q * 3 + k] = s * mpk + c * mqk;
+                    }
+                    for (int k = 0; k < 3; ++k) {
+                        final double vkp = v[k * 3 + p], vkq = v[k * 3 + q];
+                        v[k * 3 + p] = c * vkp - s * vkq;
+                        v[k * 3 + q] = s * vkp + c * vkq;
+                    }
+                }
+            }
+        }
+        int min = 0;
+        for (int k = 1; k < 3; ++k) {
+            if (m[k * 4] < m[min * 4]) min = k;
+        }
+        final double norm = Math.sqrt(v[min] * v[min] + v[3 + min] * v[3 + min] + v[6 + min] * v[6 + min]);
+        if (!(norm > 0)) return false;
+        out[0] = v[min] / norm;
+        out[1] = v[3 + min] / norm;
+        out[2] = v[6 + min] / norm;
+        return true;
+    }
+
+    // Fills the inlier mask for the plane in parallel, 64 pixels per word, and returns the inlier count
+    private int mark(float xyz[], long ignore[], float plane[]) {
+        final float a = plane[0], b = plane[1], c = plane[2], d = plane[3];
+        final float t = threshold;
+        final int n = width * height;
+        Stripes.run(inliers.length, stripes, (s, w0, w1) -> {
+            for (int w = w0; w < w1; ++w) {
+                long bits = 0;
+                for (int i = w << 6, end = Math.min(n, i + 64); i < end; ++i) {
+                    final int p = i * 3;
+                    if (xyz[p + 2] <= 0) continue;
+                    final float dist = a * xyz[p] + b * xyz[p + 1] + c * xyz[p + 2] + d;
+                    if (dist < t && dist > -t) bits |= 1L << i;
+                }
+                if (ignore != null) bits &= ~ignore[w];
+                inliers[w] = bits;
+                word_counts[w] = Long.bitCount(bits);
+            }
+        });
+        int count = 0;
+        for (int w = 0; w < inliers.length; ++w) {
+            count += word_counts[w];
+        }
+        return count;
+    }
+}
@@ -0,0 +1,331 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.geometry;
+
+import org.moe.librealsense.Extrinsics;
+import org.moe.librealsense.Intrinsics;
+import org.moe.librealsense.processing.Stripes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Truncated signed distance volume fusing depth frames from known camera poses into one surface model.
+ * <p>
+ * The volume is a dense axis-aligned grid of voxels stored off-heap, a float distance in truncation units (positive
+ * in front of the surface) and a short weight per voxel. Integration walks slabs of z slices in parallel, projecting
+ * every voxel into the depth frame. Raycasting marches camera rays until the distance changes sign and reports depth
+ * and surface normals of the fused model.
+ */
+public class TsdfVolume {
+    private final int size_x;
+    private final int size_y;
+    private final int size_z;
+    private final float voxel_size;
+    private final float origin[];
+
+    private float truncation;
+    private int max_weight = 64;
+
+    private final FloatBuffer distances;
+    private final ShortBuffer weights;
+
+    /**
+     * @param origin  world position of the corner of voxel (0, 0, 0), in meters
+     */
+    public TsdfVolume(int size_x, int size_y, int size_z, float voxel_size, float origin[]) {
+        if (size_x < 2 || size_y < 2 || size_z < 2 || !(voxel_size > 0)) {
+            throw new IllegalArgumentException("Invalid volume " + size_x + "x" + size_y + "x" + size_z);
+        }
+        if (origin.length != 3) {
+            throw new IllegalArgumentException("Expected a 3 element origin");
+        }
+        this.size_x = size_x;
+        this.size_y = size_y;
+        this.size_z = size_z;
+        this.voxel_size = voxel_size;
+        this.origin = origin.clone();
+        this.truncation = voxel_size * 4;
+
+        final int count = size_x * size_y * size_z;
+        distances = ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        weights = ByteBuffer.allocateDirect(count * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+        reset();
+    }
+
+    public int getSizeX() {
+        return size_x;
+    }
+
+    public int getSizeY() {
+        return size_y;
+    }
+
+    public int getSizeZ() {
+        return size_z;
+    }
+
+    public float getVoxelSize() {
+        return voxel_size;
+    }
+
+    /**
+     * Distance in meters behind and in front of a surface that observations affect, default four voxels
+     */
+    public void setTruncation(float truncation) {
+        this.truncation = truncation;
+    }
+
+    /**
+     * Cap on the accumulated weight of a voxel, lower values let the model follow scene changes faster. Default 64.
+     */
+    public void setMaxWeight(int max_weight) {
+        if (max_weight <= 0 || max_weight > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid weight " + max_weight);
+        }
+        this.max_weight = max_weight;
+    }
+
+    /**
+     * Signed distances in truncation units, x fastest then y then z
+     */
+    public FloatBuffer getDistances() {
+        return distances;
+    }
+
+    /**
+     * Observation counts, zero for voxels never observed
+     */
+    public ShortBuffer getWeights() {
+        return weights;
+    }
+
+    /**
+     * Forget all observations
+     */
+    public void reset() {
+        for (int i = 0, n = distances.capacity(); i < n; ++i) {
+            distances.put(i, 1);
+            weights.put(i, (short) 0);
+        }
+    }
+
+    /**
+     * Fuse a z16 depth frame
+     *
+     * @param depth            depth image, intrinsics width x height
+     * @param depth_scale      depth in meters corresponding to a depth value of 1
+     * @param camera_to_world  pose of the depth camera
+     * @param stripes          number of slabs integrated in parallel
+     */
+    public void integrate(char depth[], Intrinsics depth_intrin, float depth_scale, Extrinsics camera_to_world,
+                          int stripes) {
+        if (depth.length < depth_intrin.width * depth_intrin.height) {
+            throw new IllegalArgumentException("Expected " + depth_intrin.width * depth_intrin.height + " depth values");
+        }
+        final Extrinsics world_to_camera = camera_to_world.inverse();
+        Stripes.run(size_z, stripes, (s, z0, z1) -> integrateSlab(depth, depth_intrin, depth_scale, world_to_camera, z0, z1));
+    }
+
+    private void integrateSlab(char depth[], Intrinsics intrin, float depth_scale, Extrinsics world_to_camera,
+                               int z0, int z1) {
+        final float r[] = world_to_camera.rotation;
+        final float t[] = world_to_camera.translation;
+        final float vs = voxel_size;
+        final float trunc = truncation;
+        final int width = intrin.width;
+        final int height = intrin.height;
+        final int max_weight = this.max_weight;
+        final float point[] = new float[3];
+        final float pixel[] = new float[2];
+
+        // Camera space step between neighboring voxels along x
+        final float step_x = r[0] * vs, step_y = r[1] * vs, step_z = r[2] * vs;
+
+        for (int iz = z0; iz < z1; ++iz) {
+            final float wz = origin[2] + (iz + 0.5f) * vs;
+            for (int iy = 0; iy < size_y; ++iy) {
+                final float wy = origin[1] + (iy + 0.5f) * vs;
+                final float wx = origin[0] + 0.5f * vs;
+                float cx = r[0] * wx + r[3] * wy + r[6] * wz + t[0];
+                float cy = r[1] * wx + r[4] * wy + r[7] * wz + t[1];
+                float cz = r[2] * wx + r[5] * wy + r[8] * wz + t[2];
+                final int row = (iz * size_y + iy) * size_x;
+                for (int ix = 0; ix < size_x; ++ix, cx += step_x, cy += step_y, cz += step_z) {
+                    if (cz <= 0) continue;
+                    point[0] = cx;
+                    point[1] = cy;
+                    point[2] = cz;
+                    intrin.project(pixel, point);
+                    final int px = Math.round(pixel[0]), py = Math.round(pixel[1]);
+                    if (px < 0 || py < 0 || px >= width || py >= height) continue;
+                    final int d = depth[py * width + px];
+                    if (d == 0) continue;
+
+                    final float sdf = d * depth_scale - cz;
+                    if (sdf < -trunc) continue;
+                    final float tsdf = Math.min(1, sdf / trunc);
+
+                    final int v = row + ix;
+                    final int w = weights.get(v);
+                    distances.put(v, (distances.get(v) * w + tsdf) / (w + 1));
+                    weights.put(v, (short) Math.min(w + 1, max_weight));
+                }
+            }
+        }
+    }
+
+    /**
+     * Render the fused surface as seen by a camera
+     *
+     * @param depth            depth along the camera z axis in meters, intrinsics width x height, 0 where no surface
+     * @param normal_x         world space surface normals together with normal_y and normal_z, all may be null
+     * @param min_depth        distance from the camera at which marching starts, in meters
+     */
+    public void raycast(Intrinsics intrin, Extrinsics camera_to_world, float min_depth, float depth[],
+                        float normal_x[], float normal_y[], float normal_z[], int stripes) {
+        final int count = intrin.width * intrin.height;
+        if (depth.length < count || (normal_x != null && (normal_x.length < count || normal_y.length < count
+                || normal_z.length < count))) {
+            throw new IllegalArgumentException("Expected " + count + " pixels");
+        }
+        Stripes.run(intrin.height, stripes, (s, y0, y1) ->
+                raycastRows(intrin, camera_to_world, min_depth, depth, normal_x, normal_y, normal_z, y0, y1));
+    }
+
+    private void raycastRows(Intrinsics intrin, Extrinsics camera_to_world, float min_depth, float depth[],
+                             float normal_x[], float normal_y[], float normal_z[], int y0, int y1) {
+        final float r[] = camera_to_world.rotation;
+        final float ox = camera_to_world.translation[0];
+        final float oy = camera_to_world.translation[1];
+        final float oz = camera_to_world.translation[2];
+        final float lo[] = {origin[0], origin[1], origin[2]};
+        final float hi[] = {origin[0] + size_x * voxel_size, origin[1] + size_y * voxel_size, origin[2] + size_z * voxel_size};
+        final float pixel[] = new float[2];
+        final float ray[] = new float[3];
+        final float dir[] = new float[3];
+        final float o[] = {ox, oy, oz};
+
+        for (int y = y0; y < y1; ++y) {
+            for (int x = 0, i = y * intrin.width; x < intrin.width; ++x, ++i) {
+                depth[i] = 0;
+                if (normal_x != null) {
+                    normal_x[i] = normal_y[i] = normal_z[i] = 0;
+                }
+
+                // World direction of the ray with unit camera z, so the ray parameter is the depth
+                pixel[0] = x;
+                pixel[1] = y;
+                intrin.deproject(ray, pixel, 1);
+                dir[0] = r[0] * ray[0] + r[3] * ray[1] + r[6];
+                dir[1] = r[1] * ray[0] + r[4] * ray[1] + r[7];
+                dir[2] = r[2] * ray[0] + r[5] * ray[1] + r[8];
+
+                // Clip to the volume bounds
+                float t_near = min_depth, t_far = Float.MAX_VALUE;
+                for (int a = 0; a < 3; ++a) {
+                    if (dir[a] == 0) {
+                        if (o[a] < lo[a] || o[a] > hi[a]) t_far = -1;
+                        continue;
+                    }
+                    float ta = (lo[a] - o[a]) / dir[a], tb = (hi[a] - o[a]) / dir[a];
+                    if (ta > tb) {
+                        final float swap = ta;
+                        ta = tb;
+                        tb = swap;
+                    }
+                    t_near = Math.max(t_near, ta);
+                    t_far = Math.min(t_far, tb);
+                }
+                if (t_near >= t_far) continue;
+
+                // Steps shrink with the distance to the surface, but never below a voxel
+                final float length = (float) Math.sqrt(dir[0] * dir[0] + dir[1] * dir[1] + dir[2] * dir[2]);
+                final float min_step = voxel_size / length;
+                final float max_step = truncation / length;
+                float t_prev = t_near;
+                float prev = Float.NaN;
+                for (float t = t_near; t <= t_far; ) {
+                    final float value = sample(ox + dir[0] * t, oy + dir[1] * t, oz + dir[2] * t);
+                    if (value != value) {
+                        prev = Float.NaN;
+                        t += max_step;
+                        continue;
+                    }
+                    if (value < 0) {
+                        // Only a crossing from the front counts, starting behind a surface is not a hit
+                        if (prev > 0) {
+                            final float hit = t_prev + (t - t_prev) * prev / (prev - value);
+                            depth[i] = hit;
+                            if (normal_x != null) {
+                                normal(ox + dir[0] * hit, oy + dir[1] * hit, oz + dir[2] * hit, normal_x, normal_y, normal_z, i);
+                            }
+                        }
+                        break;
+                    }
+                    prev = value;
+                    t_prev = t;
+                    t += Math.max(min_step, 0.8f * value * max_step);
+                }
+            }
+        }
+    }
+
+    // Trilinear interpolation of the distance at a world position, NaN where a contributing voxel was never observed
+    private float sample(float x, float y, float z) {
+        final float gx = (x - origin[0]) / voxel_size - 0.5f;
+        final float gy = (y - origin[1]) / voxel_size - 0.5f;
+        final float gz = (z - origin[2]) / voxel_size - 0.5f;
+        final int ix = (int) Math.floor(gx), iy = (int) Math.floor(gy), iz = (int) Math.floor(gz);
+        if (ix < 0 || iy < 0 || iz < 0 || ix + 1 >= size_x || iy + 1 >= size_y || iz + 1 >= size_z) {
+            return Float.NaN;
+        }
+        final float fx = gx - ix, fy = gy - iy, fz = gz - iz;
+        final int v = (iz * size_y + iy) * size_x + ix;
+        final int dy = size_x, dz = size_x * size_y;
+        if (weights.get(v) == 0 || weights.get(v + 1) == 0 || weights.get(v + dy) == 0 || weights.get(v + dy + 1) == 0
+                || weights.get(v + dz) == 0 || weights.get(v + dz + 1) == 0 || weights.get(v + dz + dy) == 0
+                || weights.get(v + dz + dy + 1) == 0) {
+            return Float.NaN;
+        }
+        final float c00 = lerp(distances.get(v), distances.get(v + 1), fx);
+        final float c10 = lerp(distances.get(v + dy), distances.get(v + dy + 1), fx);
+        final float c01 = lerp(distances.get(v + dz), distances.get(v + dz + 1), fx);
+        final float c11 = lerp(distances.get(v + dz + dy), distances.get(v + dz + dy + 1), fx);
+        return lerp(lerp(c00, c10, fy), lerp(c01, c11, fy), fz);
+    }
+
+    // Normalized distance gradient by central differences, zero where the neighborhood is not fully observed
+    private void normal(float x, float y, float z, float normal_x[], float normal_y[], float normal_z[], int i) {
+        final float h = voxel_size;
+        final float gx = sample(x + h, y, z) - sample(x - h, y, z);
+        final float gy = sample(x, y + h, z) - sample(x, y - h, z);
+        final float gz = sample(x, y, z + h) - sample(x, y, z - h);
+        final float length = (float) Math.sqrt(gx * gx + gy * gy + gz * gz);
+        if (!(length > 0)) return;
+        normal_x[i] = gx / length;
+        normal_y[i] = gy / length;
+        normal_z[i] = gz / length;
+    }
+
+    private static float lerp(float a, float b, float f) {
+        return a + (b - a) * f;
+    }
+}
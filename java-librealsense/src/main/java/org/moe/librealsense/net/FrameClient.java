@@ -0,0 +1,124 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.net;
+
+import org.moe.librealsense.RS;
+import org.moe.librealsense.pipeline.FrameSet;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking receiver for a {@link FrameServer} stream, reading each frame straight into the direct buffers of a
+ * {@link FrameSet}. Received frame sets carry no calibration.
+ */
+public class FrameClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(FrameProtocol.SET_HEADER
+            + FrameSet.STREAM_COUNT * FrameProtocol.FRAME_HEADER).order(ByteOrder.BIG_ENDIAN);
+    private long received;
+    private long bytes;
+
+    public FrameClient(InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        channel.socket().setTcpNoDelay(true);
+    }
+
+    /**
+     * Number of frame sets received so far
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Wait for the next frame set and read it, returns false if the server closed the connection in between frame
+     * sets
+     */
+    public boolean receive(FrameSet frames) throws IOException {
+        header.clear().limit(FrameProtocol.SET_HEADER);
+        if (!readFully(header, true)) {
+            return false;
+        }
+        if (header.getInt(0) != FrameProtocol.MAGIC || header.getShort(4) != FrameProtocol.VERSION) {
+            throw new IOException("Not a frame stream, or an unsupported version");
+        }
+        final byte order = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? FrameProtocol.BIG_ENDIAN
+                : FrameProtocol.LITTLE_ENDIAN;
+        if (header.get(6) != order) {
+            throw new IOException("Frame payloads are in the other byte order");
+        }
+        final int count = header.get(7);
+        if (count < 0 || count > FrameSet.STREAM_COUNT) {
+            throw new IOException("Invalid frame count " + count);
+        }
+        frames.reset(header.getLong(8), null);
+
+        header.limit(FrameProtocol.SET_HEADER + count * FrameProtocol.FRAME_HEADER);
+        readFully(header, false);
+        long size = header.limit();
+        for (int i = 0; i < count; ++i) {
+            final int at = FrameProtocol.SET_HEADER + i * FrameProtocol.FRAME_HEADER;
+            final int stream = header.getInt(at);
+            final int format = header.getInt(at + 4);
+            final int width = header.getInt(at + 8);
+            final int height = header.getInt(at + 12);
+            final int timestamp = header.getInt(at + 16);
+            final int length = header.getInt(at + 20);
+            if (stream < 0 || stream >= FrameSet.STREAM_COUNT || width < 0 || height < 0) {
+                throw new IOException("Invalid frame header for stream " + stream);
+            }
+            final ByteBuffer data = frames.get(RS.stream.fromValue(stream)).prepare(width, height, format, timestamp);
+            if (data.limit() != length) {
+                throw new IOException("Frame of " + length + " bytes does not match " + width + "x" + height
+                        + " format " + format);
+            }
+            readFully(data, false);
+            data.flip();
+            size += length;
+        }
+        ++received;
+        bytes += size;
+        return true;
+    }
+
+    // Returns false on a clean end of stream before the first byte, if allowed
+    private boolean readFully(ByteBuffer buffer, boolean eofAllowed) throws IOException {
+        final int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (eofAllowed && buffer.position() == start) return false;
+                throw new EOFException("Connection closed in the middle of a frame set");
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.net;
+
+/**
+ * Wire format of the frame stream, headers in network byte order.
+ * <p>
+ * Every frame set starts with a 16 byte set header: int magic, short version, byte payload byte order (0 little
+ * endian, 1 big endian), byte frame count, long sequence. It is followed by one 24 byte header per frame: int stream,
+ * int format, int width, int height, int timestamp, int payload length, and then by the payloads in the same order.
+ */
+final class FrameProtocol {
+    private FrameProtocol() {
+    }
+
+    static final int MAGIC = 0x52534653; /* 'RSFS' */
+    static final short VERSION = 1;
+    static final int SET_HEADER = 16;
+    static final int FRAME_HEADER = 24;
+
+    static final byte LITTLE_ENDIAN = 0;
+    static final byte BIG_ENDIAN = 1;
+}
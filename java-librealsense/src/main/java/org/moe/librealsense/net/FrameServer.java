@@ -0,0 +1,465 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.net;
+
+import org.moe.librealsense.RS;
+import org.moe.librealsense.pipeline.FrameSet;
+import org.moe.librealsense.pipeline.Sink;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams frame sets to any number of TCP clients from a single non-blocking selector thread. The format is described
+ * in {@link FrameProtocol} and read by {@link FrameClient}.
+ * <p>
+ * A published frame set is copied once into a reference-counted packet shared by all clients, which is sent with
+ * gathering writes straight from its direct buffers. Every client has a bounded queue of packets; when it is full the
+ * oldest one is skipped and the client is switched to receiving only every n-th frame set. The decimation is lowered
+ * again once the client keeps up for a while.
+ * <pre>
+ * FrameServer server = new FrameServer(new InetSocketAddress(5000), 2, RS.stream.depth, RS.stream.color);
+ * server.start();
+ * Pipeline pipeline = Pipeline.from("acquire", source).to("serve", server, 2, Backpressure.DROP_OLDEST);
+ * </pre>
+ */
+public class FrameServer implements Sink<FrameSet>, AutoCloseable {
+    private static final int MAX_DECIMATION = 16;
+    private static final int RECOVERY = 30; /* frame sets a client has to keep up with before its decimation is lowered */
+    private static final int INCOMING = 4;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final int queueSize;
+    private final RS.stream streams[];
+    private final ArrayBlockingQueue<Packet> incoming = new ArrayBlockingQueue<>(INCOMING);
+    private final ConcurrentLinkedQueue<Packet> free = new ConcurrentLinkedQueue<>();
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong overrun = new AtomicLong();
+    private final ByteBuffer discard = ByteBuffer.allocate(256);
+    private volatile Thread thread;
+    private volatile boolean running;
+
+    /**
+     * @param address    where to listen, port 0 picks a free port
+     * @param queueSize  frame sets queued per client before its oldest one is skipped
+     * @param streams    streams to send, all present streams if none are given
+     */
+    public FrameServer(InetSocketAddress address, int queueSize, RS.stream... streams) throws IOException {
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("Invalid queue size " + queueSize);
+        }
+        this.queueSize = queueSize;
+        this.streams = streams.length == 0 ? RS.stream.values() : streams.clone();
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        try {
+            server.bind(address);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException ex) {
+            server.close();
+            selector.close();
+            throw ex;
+        }
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Start the selector thread
+     */
+    public synchronized void start() {
+        if (running || thread != null) {
+            throw new IllegalStateException("Server must be stopped before it is started");
+        }
+        running = true;
+        thread = new Thread(this::run);
+        thread.setName("FrameServer " + getPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the selector thread and disconnect all clients, the server can be started again
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        final Thread thread = this.thread;
+        if (thread != null) {
+            selector.wakeup();
+            thread.join();
+            this.thread = null;
+        }
+    }
+
+    /**
+     * Stop and release the listening socket
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            stop();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        server.close();
+        selector.close();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * The exception which stopped the selector thread, or null
+     */
+    public Throwable getFailure() {
+        return failure.get();
+    }
+
+    /**
+     * Connected clients with their counters
+     */
+    public List<Client> getClients() {
+        return Collections.unmodifiableList(new ArrayList<>(clients));
+    }
+
+    /**
+     * Number of frame sets published so far
+     */
+    public long getPublished() {
+        return published.get();
+    }
+
+    /**
+     * Number of published frame sets discarded before the selector thread got to them
+     */
+    public long getOverrun() {
+        return overrun.get();
+    }
+
+    /**
+     * Send a frame set to all clients. It is copied, so the caller may reuse it as soon as this returns.
+     */
+    @Override
+    public void accept(FrameSet frames) {
+        Packet packet = free.poll();
+        if (packet == null) {
+            packet = new Packet();
+        }
+        packet.fill(frames, streams);
+        packet.references.set(1);
+        while (!incoming.offer(packet)) {
+            final Packet old = incoming.poll();
+            if (old != null) {
+                release(old);
+                overrun.incrementAndGet();
+            }
+        }
+        published.incrementAndGet();
+        selector.wakeup();
+    }
+
+    private void release(Packet packet) {
+        if (packet.references.decrementAndGet() == 0) {
+            free.add(packet);
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Packet packet;
+                while ((packet = incoming.poll()) != null) {
+                    distribute(packet);
+                }
+
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    final Client client = (Client) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(client);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(client);
+                        }
+                    } catch (IOException ex) {
+                        disconnect(client);
+                    }
+                }
+            }
+        } catch (Throwable ex) {
+            failure.compareAndSet(null, ex);
+            running = false;
+        } finally {
+            for (Client client : clients) {
+                disconnect(client);
+            }
+            Packet packet;
+            while ((packet = incoming.poll()) != null) {
+                release(packet);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = server.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        final Client client = new Client(channel);
+        client.key = channel.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+    }
+
+    private void disconnect(Client client) {
+        if (!clients.remove(client)) return;
+        client.key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException ex) {
+            // Closing anyway
+        }
+        if (client.current != null) {
+            release(client.current);
+            client.current = null;
+        }
+        Packet packet;
+        while ((packet = client.queue.poll()) != null) {
+            release(packet);
+        }
+    }
+
+    // Clients are not expected to send anything, reading only detects the connection being closed
+    private void read(Client client) throws IOException {
+        discard.clear();
+        if (client.channel.read(discard) < 0) {
+            disconnect(client);
+        }
+    }
+
+    private void distribute(Packet packet) {
+        for (Client client : clients) {
+            if (++client.phase < client.decimation) {
+                client.decimated.incrementAndGet();
+                continue;
+            }
+            client.phase = 0;
+
+            if (client.queue.size() >= queueSize) {
+                // Falling behind: skip the oldest queued frame set and send fewer from now on
+                release(client.queue.poll());
+                client.skipped.incrementAndGet();
+                client.calm = 0;
+                if (client.decimation < MAX_DECIMATION) ++client.decimation;
+            } else if (client.queue.isEmpty() && client.current == null) {
+                if (++client.calm >= RECOVERY && client.decimation > 1) {
+                    --client.decimation;
+                    client.calm = 0;
+                }
+            }
+            packet.references.incrementAndGet();
+            client.queue.add(packet);
+            client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        release(packet);
+    }
+
+    private void write(Client client) throws IOException {
+        while (true) {
+            if (client.current == null) {
+                final Packet packet = client.queue.poll();
+                if (packet == null) {
+                    client.key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+                client.begin(packet);
+            }
+            client.remaining -= client.channel.write(client.writing, 0, client.writingCount);
+            if (client.remaining > 0) {
+                // Socket buffer is full, continue when it is writable again
+                return;
+            }
+            client.sent.incrementAndGet();
+            client.bytes.addAndGet(client.current.size);
+            release(client.current);
+            client.current = null;
+        }
+    }
+
+    /**
+     * A frame set serialized once for all clients
+     */
+    private static final class Packet {
+        final ByteBuffer header = ByteBuffer.allocateDirect(FrameProtocol.SET_HEADER
+                + FrameSet.STREAM_COUNT * FrameProtocol.FRAME_HEADER).order(ByteOrder.BIG_ENDIAN);
+        final ByteBuffer payloads[] = new ByteBuffer[FrameSet.STREAM_COUNT];
+        final AtomicInteger references = new AtomicInteger();
+        int count;
+        long size;
+
+        void fill(FrameSet frames, RS.stream streams[]) {
+            count = 0;
+            header.clear().position(FrameProtocol.SET_HEADER);
+            for (RS.stream stream : streams) {
+                final FrameSet.Frame frame = frames.get(stream);
+                if (!frame.isPresent()) continue;
+                final ByteBuffer data = frame.getData();
+                final int length = data.limit();
+                ByteBuffer payload = payloads[count];
+                if (payload == null || payload.capacity() < length) {
+                    payload = payloads[count] = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+                }
+                payload.clear();
+                payload.put(data.duplicate()).flip();
+
+                header.putInt(stream.value);
+                header.putInt(frame.getFormat());
+                header.putInt(frame.getWidth());
+                header.putInt(frame.getHeight());
+                header.putInt(frame.getTimestamp());
+                header.putInt(length);
+                ++count;
+            }
+            header.flip();
+            header.putInt(0, FrameProtocol.MAGIC);
+            header.putShort(4, FrameProtocol.VERSION);
+            header.put(6, ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? FrameProtocol.BIG_ENDIAN
+                    : FrameProtocol.LITTLE_ENDIAN);
+            header.put(7, (byte) count);
+            header.putLong(8, frames.getSequence());
+
+            size = header.limit();
+            for (int i = 0; i < count; ++i) {
+                size += payloads[i].limit();
+            }
+        }
+    }
+
+    /**
+     * One connection, its queue and counters. Only the counters may be read outside the selector thread.
+     */
+    public static final class Client {
+        private final SocketChannel channel;
+        private final String address;
+        private SelectionKey key;
+        private final ArrayDeque<Packet> queue = new ArrayDeque<>();
+
+        // Packet being written, with views whose positions track this client's progress
+        private Packet current;
+        private final ByteBuffer writing[] = new ByteBuffer[1 + FrameSet.STREAM_COUNT];
+        private int writingCount;
+        private long remaining;
+
+        private volatile int decimation = 1;
+        private int phase;
+        private int calm;
+
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong decimated = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+
+        private Client(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.address = String.valueOf(channel.getRemoteAddress());
+        }
+
+        private void begin(Packet packet) {
+            current = packet;
+            writing[0] = packet.header.duplicate();
+            for (int i = 0; i < packet.count; ++i) {
+                writing[i + 1] = packet.payloads[i].duplicate();
+            }
+            writingCount = packet.count + 1;
+            remaining = packet.size;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        /**
+         * Number of frame sets completely sent
+         */
+        public long getSent() {
+            return sent.get();
+        }
+
+        /**
+         * Frame sets dropped from a full queue
+         */
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        /**
+         * Frame sets left out by the decimation
+         */
+        public long getDecimated() {
+            return decimated.get();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        /**
+         * The client currently receives every n-th frame set
+         */
+        public int getDecimation() {
+            return decimation;
+        }
+
+        @Override
+        public String toString() {
+            return address + " sent " + sent.get() + ", skipped " + skipped.get() + ", decimated " + decimated.get()
+                    + ", decimation " + decimation;
+        }
+    }
+}
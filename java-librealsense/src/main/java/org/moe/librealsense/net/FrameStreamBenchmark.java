@@ -0,0 +1,126 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.net;
+
+import org.moe.librealsense.RS;
+import org.moe.librealsense.pipeline.FrameSet;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback throughput benchmark of {@link FrameServer} and {@link FrameClient}, needs no device. Publishes synthetic
+ * 640x480 depth and color frame sets as fast as possible to a number of fast clients and slow clients, and prints what
+ * each client received.
+ * <p>
+ * Arguments: [seconds] [fast clients] [slow clients] [slow client delay in ms]
+ */
+public final class FrameStreamBenchmark {
+    private FrameStreamBenchmark() {
+    }
+
+    public static void main(String args[]) throws Exception {
+        final int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        final int fast = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        final int slow = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        final int delay = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+
+        final FrameSet frames = new FrameSet();
+        final ByteBuffer depth = frames.get(RS.stream.depth).prepare(640, 480, RS.format.z16.value, 0);
+        final ByteBuffer color = frames.get(RS.stream.color).prepare(640, 480, RS.format.rgb8.value, 0);
+        for (int i = 0; i < depth.limit(); ++i) depth.put(i, (byte) i);
+        for (int i = 0; i < color.limit(); ++i) color.put(i, (byte) (i * 7));
+
+        try (FrameServer server = new FrameServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2)) {
+            server.start();
+            final InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+            final List<Receiver> receivers = new ArrayList<>();
+            for (int i = 0; i < fast + slow; ++i) {
+                receivers.add(new Receiver(new FrameClient(address), i < fast ? 0 : delay));
+            }
+            for (Receiver receiver : receivers) {
+                receiver.start();
+            }
+            while (server.getClients().size() < receivers.size()) {
+                Thread.sleep(1);
+            }
+
+            final long start = System.nanoTime();
+            final long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            long sequence = 0;
+            while (System.nanoTime() < end) {
+                frames.reset(sequence++, null);
+                frames.get(RS.stream.depth).prepare(640, 480, RS.format.z16.value, (int) sequence);
+                frames.get(RS.stream.color).prepare(640, 480, RS.format.rgb8.value, (int) sequence);
+                server.accept(frames);
+            }
+            final double elapsed = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("published %d frame sets, %.0f/s, %d overrun%n", server.getPublished(),
+                    server.getPublished() / elapsed, server.getOverrun());
+            for (FrameServer.Client client : server.getClients()) {
+                System.out.printf("%s: %.0f frame sets/s, %.1f MB/s%n", client, client.getSent() / elapsed,
+                        client.getBytes() / elapsed / 1e6);
+            }
+            server.stop();
+            for (Receiver receiver : receivers) {
+                receiver.join();
+            }
+            for (Receiver receiver : receivers) {
+                final Exception error = receiver.error;
+                System.out.printf("client with %d ms delay received %d frame sets%s%n", receiver.delay,
+                        receiver.client.getReceived(), error == null ? "" : " (" + error.getMessage() + ")");
+            }
+        }
+    }
+
+    private static class Receiver extends Thread {
+        final FrameClient client;
+        final int delay;
+        volatile Exception error;
+
+        Receiver(FrameClient client, int delay) {
+            this.client = client;
+            this.delay = delay;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            final FrameSet frames = new FrameSet();
+            try {
+                while (client.receive(frames)) {
+                    if (delay > 0) Thread.sleep(delay);
+                }
+            } catch (IOException | InterruptedException ex) {
+                error = ex;
+            } finally {
+                try {
+                    client.close();
+                } catch (IOException ex) {
+                    // Closing anyway
+                }
+            }
+        }
+    }
+}
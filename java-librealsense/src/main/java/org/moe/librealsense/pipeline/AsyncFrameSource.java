@@ -0,0 +1,239 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking frame acquisition on top of poll_for_frames. Callers get a future completing with the next frame set,
+ * and a few scheduler threads shared by all devices do the polling, instead of one thread per device blocked inside
+ * wait_for_frames.
+ * <p>
+ * Polls are timed from the framerate: after a frame arrives the next poll is parked until shortly before the following
+ * frame is due, and if it is late, polls are repeated with a delay growing up to an eighth of the frame interval. A
+ * device is only polled while someone waits for its frames.
+ * <p>
+ * <pre>
+ * ScheduledExecutorService scheduler = AsyncFrameSource.newScheduler(2);
+ * AsyncFrameSource source = new AsyncFrameSource(new DeviceFrameSource(dev, 1), 4, scheduler);
+ * source.nextAsync().thenAccept(frames -&gt; ...);
+ * </pre>
+ * Like {@link DeviceFrameSource}, a frame set is overwritten after poolSize further captures. All futures waiting at
+ * the time of a capture complete with the same frame set.
+ */
+public class AsyncFrameSource implements Source<FrameSet>, AutoCloseable {
+    private static final long MIN_DELAY = 50000; /* ns, first retry after a frame is late */
+
+    private final FrameCapture capture;
+    private final ScheduledExecutorService scheduler;
+    private final long interval; /* ns between frames */
+    private final FrameSet pool[];
+    private long captures; /* poll thread only */
+
+    // Guarded by this
+    private List<CompletableFuture<FrameSet>> waiting = new ArrayList<>();
+    private boolean polling;
+    private boolean closed;
+    private boolean seen;
+    private long lastFrame;
+    private int misses;
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+
+    /**
+     * @param framerate  rate at which the capture delivers new frames
+     * @param poolSize   number of frame sets captured into in turn
+     */
+    public AsyncFrameSource(FrameCapture capture, int framerate, int poolSize, ScheduledExecutorService scheduler) {
+        if (capture == null || scheduler == null) {
+            throw new NullPointerException();
+        }
+        if (framerate <= 0) {
+            throw new IllegalArgumentException("Invalid framerate " + framerate);
+        }
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("Invalid pool size " + poolSize);
+        }
+        this.capture = capture;
+        this.scheduler = scheduler;
+        this.interval = TimeUnit.SECONDS.toNanos(1) / framerate;
+        pool = new FrameSet[poolSize];
+        for (int i = 0; i < poolSize; ++i) {
+            pool[i] = new FrameSet();
+        }
+    }
+
+    /**
+     * Poll a device at the highest framerate of its enabled streams
+     */
+    public AsyncFrameSource(DeviceFrameSource source, int poolSize, ScheduledExecutorService scheduler) {
+        this(source, source.getFramerate(), poolSize, scheduler);
+    }
+
+    /**
+     * Scheduler with the given number of daemon threads, enough to poll many devices
+     */
+    public static ScheduledExecutorService newScheduler(int threads) {
+        return Executors.newScheduledThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setName("AsyncFrameSource");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Future completing with the next frames which arrive, or exceptionally if polling or capturing fails
+     */
+    public CompletableFuture<FrameSet> nextAsync() {
+        final CompletableFuture<FrameSet> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                future.completeExceptionally(new CancellationException("Source is closed"));
+                return future;
+            }
+            waiting.add(future);
+            if (polling) {
+                return future;
+            }
+            polling = true;
+            try {
+                scheduler.schedule(this::poll, nextDelay(), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ex) {
+                polling = false;
+                waiting.remove(future);
+                throw ex;
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Wait for the next frames. Only the future is waited on, the thread never blocks inside native code.
+     */
+    @Override
+    public FrameSet next() throws Exception {
+        try {
+            return nextAsync().get();
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw ex;
+        }
+    }
+
+    /**
+     * Stop polling, pending futures are cancelled
+     */
+    @Override
+    public void close() {
+        final List<CompletableFuture<FrameSet>> pending;
+        synchronized (this) {
+            closed = true;
+            pending = waiting;
+            waiting = new ArrayList<>();
+        }
+        for (CompletableFuture<FrameSet> future : pending) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Number of polls so far, divided by {@link #getFrames()} this shows how well the polls are timed
+     */
+    public long getPolls() {
+        return polls.get();
+    }
+
+    /**
+     * Number of frame sets captured so far
+     */
+    public long getFrames() {
+        return frames.get();
+    }
+
+    // Called with the lock held
+    private long nextDelay() {
+        final long now = System.nanoTime();
+        final long guard = interval >> 3;
+        if (seen && now - lastFrame < interval - guard) {
+            // Park until shortly before the next frame is due
+            misses = 0;
+            return lastFrame + interval - guard - now;
+        }
+        // Due or late, retry soon and back off up to the guard interval
+        final long delay = Math.min(MIN_DELAY << Math.min(misses, 16), guard);
+        ++misses;
+        return delay;
+    }
+
+    private void poll() {
+        polls.incrementAndGet();
+        FrameSet captured = null;
+        Throwable error = null;
+        try {
+            if (capture.pollForFrames()) {
+                captured = pool[(int) (captures++ % pool.length)];
+                capture.capture(captured);
+                frames.incrementAndGet();
+            }
+        } catch (Throwable ex) {
+            error = ex;
+        }
+
+        final List<CompletableFuture<FrameSet>> ready;
+        synchronized (this) {
+            if (captured != null) {
+                seen = true;
+                lastFrame = System.nanoTime();
+                misses = 0;
+            }
+            if (captured == null && error == null && !closed) {
+                try {
+                    scheduler.schedule(this::poll, nextDelay(), TimeUnit.NANOSECONDS);
+                    return;
+                } catch (RejectedExecutionException ex) {
+                    error = ex;
+                }
+            }
+            polling = false;
+            ready = waiting;
+            waiting = new ArrayList<>();
+        }
+
+        // Complete outside the lock, callbacks may ask for the next frames right away
+        for (CompletableFuture<FrameSet> future : ready) {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(captured);
+            }
+        }
+    }
+}
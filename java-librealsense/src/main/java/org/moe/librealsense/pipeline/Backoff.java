@@ -0,0 +1,50 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Idle strategy of the lock-free queues: spin briefly, then yield, then park for short periods.
+ */
+final class Backoff {
+    private static final long PARK_NANOS = 50_000;
+    private static final int SPINS = 100;
+    private static final int YIELDS = 200;
+
+    private Backoff() {
+    }
+
+    /**
+     * Wait a little, escalating with the number of unsuccessful attempts so far. Returns the new attempt count.
+     */
+    static int idle(int spins) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (spins < SPINS) {
+            return spins + 1;
+        }
+        if (spins < YIELDS) {
+            Thread.yield();
+            return spins + 1;
+        }
+        LockSupport.parkNanos(PARK_NANOS);
+        return spins;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+/**
+ * What a pipeline edge does when the downstream stage falls behind and its input ring is full
+ */
+public enum Backpressure {
+    /**
+     * Stall the upstream stage until there is room, nothing is lost
+     */
+    BLOCK,
+    /**
+     * Discard the oldest queued element, the upstream stage never waits
+     */
+    DROP_OLDEST,
+}
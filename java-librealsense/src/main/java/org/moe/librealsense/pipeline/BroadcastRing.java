@@ -0,0 +1,310 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Ring of pre-allocated slots written by one producer and read by any number of consumers, each of which sees every
+ * element. Every consumer keeps its own cursor. The producer never overwrites a slot that a required consumer has not
+ * released yet; optional consumers do not hold the producer back and skip ahead to the newest element when they fall
+ * a whole ring behind.
+ * <p>
+ * Producer side, e.g. capturing from a device:
+ * <pre>
+ * long seq = ring.claim();
+ * source.capture(ring.get(seq));
+ * ring.publish(seq);
+ * </pre>
+ * Consumer side:
+ * <pre>
+ * long seq = consumer.take();
+ * process(consumer.get(seq));
+ * consumer.release(seq);
+ * </pre>
+ * An optional consumer may have its slot reused while reading it and has to check {@link Consumer#isValid(long)}
+ * before trusting what it read. Claiming, publishing and consuming do not lock or allocate.
+ */
+public class BroadcastRing<T> {
+    private final Object slots[];
+    private final int mask;
+
+    // Last published sequence, and the last claimed one which may be in the middle of being written
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    // Producer thread only: next sequence to claim, the last known minimum of the required consumers and the consumer
+    // array it was computed from, so that registering a consumer invalidates it
+    private long next;
+    private long gating = -1;
+    private Consumer gated[];
+
+    private volatile Consumer consumers[];
+
+    /**
+     * @param capacity  number of slots, rounded up to a power of two
+     * @param factory   creates the slot contents, called once per slot
+     */
+    public BroadcastRing(int capacity, Supplier<T> factory) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        slots = new Object[size];
+        for (int i = 0; i < size; ++i) {
+            slots[i] = factory.get();
+        }
+        mask = size - 1;
+        consumers = newConsumers(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Consumer[] newConsumers(int length) {
+        return (Consumer[]) new BroadcastRing<?>.Consumer[length];
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Last published sequence, -1 before the first publish
+     */
+    public long getCursor() {
+        return cursor.get();
+    }
+
+    /**
+     * Register a consumer, which starts with the next published element
+     *
+     * @param required  whether the producer waits for this consumer when the ring is full
+     */
+    public synchronized Consumer addConsumer(String name, boolean required) {
+        final Consumer consumer = new Consumer(name, required, cursor.get());
+        final Consumer updated[] = Arrays.copyOf(consumers, consumers.length + 1);
+        updated[consumers.length] = consumer;
+        consumers = updated;
+        return consumer;
+    }
+
+    /**
+     * Unregister a consumer, after which it no longer holds back the producer
+     */
+    public synchronized void removeConsumer(Consumer consumer) {
+        final Consumer updated[] = newConsumers(consumers.length);
+        int count = 0;
+        for (Consumer c : consumers) {
+            if (c != consumer) updated[count++] = c;
+        }
+        consumers = Arrays.copyOf(updated, count);
+    }
+
+    public Consumer[] getConsumers() {
+        return consumers.clone();
+    }
+
+    /**
+     * Claim the next slot for writing, waiting while a required consumer still holds it. Producer thread only.
+     */
+    public long claim() throws InterruptedException {
+        final long seq = next;
+        int spins = 0;
+        while (!available(seq)) {
+            spins = Backoff.idle(spins);
+        }
+        return begin(seq);
+    }
+
+    /**
+     * Claim the next slot for writing if no required consumer holds it, otherwise return -1. Producer thread only.
+     */
+    public long tryClaim() {
+        final long seq = next;
+        return available(seq) ? begin(seq) : -1;
+    }
+
+    private boolean available(long seq) {
+        final long wrap = seq - mask - 1;
+        final Consumer current[] = consumers;
+        if (current == gated && wrap <= gating) {
+            return true;
+        }
+        long min = Long.MAX_VALUE;
+        for (Consumer consumer : current) {
+            if (consumer.required) {
+                min = Math.min(min, consumer.sequence.get());
+            }
+        }
+        // Without required consumers only this slot is known to be free, so that a consumer added later still gates
+        gating = min == Long.MAX_VALUE ? wrap : min;
+        gated = current;
+        return wrap <= min;
+    }
+
+    private long begin(long seq) {
+        // Full fence, so that optional consumers observe the claim before any write into the slot
+        claimed.getAndSet(seq);
+        next = seq + 1;
+        return seq;
+    }
+
+    /**
+     * Slot of a sequence
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long seq) {
+        return (T) slots[(int) seq & mask];
+    }
+
+    /**
+     * Make a claimed slot visible to the consumers. Producer thread only.
+     */
+    public void publish(long seq) {
+        cursor.lazySet(seq);
+    }
+
+    private boolean isValid(long seq) {
+        // A compare-and-set is a full fence, preceding reads of the slot cannot be moved past it
+        while (true) {
+            final long c = claimed.get();
+            if (c - seq > mask) return false;
+            if (claimed.compareAndSet(c, c)) return true;
+        }
+    }
+
+    /**
+     * Cursor of one consumer, to be used by a single thread
+     */
+    public final class Consumer {
+        private final String name;
+        private final boolean required;
+
+        // Last released sequence, read by the producer for gating
+        private final AtomicLong sequence;
+
+        // Consumer thread only: next sequence to hand out
+        private long next;
+
+        private volatile long processed;
+        private volatile long skipped;
+        private volatile long maxLag;
+
+        private Consumer(String name, boolean required, long start) {
+            this.name = name;
+            this.required = required;
+            this.sequence = new AtomicLong(start);
+            this.next = start + 1;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isRequired() {
+            return required;
+        }
+
+        /**
+         * Next sequence to process, or -1 if nothing new was published. An optional consumer a whole ring behind
+         * skips to the newest element.
+         */
+        public long poll() {
+            final long available = cursor.get();
+            if (next > available) {
+                return -1;
+            }
+            final long lag = available - next + 1;
+            if (lag > maxLag) {
+                maxLag = lag;
+            }
+            if (!required && lag > mask) {
+                skipped += available - next;
+                next = available;
+            }
+            ++processed;
+            return next++;
+        }
+
+        /**
+         * Next sequence to process, waiting until one is published
+         */
+        public long take() throws InterruptedException {
+            int spins = 0;
+            long seq;
+            while ((seq = poll()) < 0) {
+                spins = Backoff.idle(spins);
+            }
+            return seq;
+        }
+
+        public T get(long seq) {
+            return BroadcastRing.this.get(seq);
+        }
+
+        /**
+         * Determine if the slot of a sequence was not reused since it was handed out, i.e. whether everything read from
+         * it is consistent. Always true for required consumers until they release it.
+         */
+        public boolean isValid(long seq) {
+            return required || BroadcastRing.this.isValid(seq);
+        }
+
+        /**
+         * Done with all sequences up to and including this one, their slots may be reused
+         */
+        public void release(long seq) {
+            sequence.lazySet(seq);
+        }
+
+        /**
+         * Number of published elements not yet released
+         */
+        public long getLag() {
+            return Math.max(0, cursor.get() - sequence.get());
+        }
+
+        /**
+         * Largest number of published elements waiting when this consumer asked for the next one
+         */
+        public long getMaxLag() {
+            return maxLag;
+        }
+
+        public long getProcessed() {
+            return processed;
+        }
+
+        /**
+         * Number of elements an optional consumer never saw because it fell behind
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: processed %d, skipped %d, lag %d, max lag %d", name, processed, skipped,
+                    getLag(), maxLag);
+        }
+    }
+}
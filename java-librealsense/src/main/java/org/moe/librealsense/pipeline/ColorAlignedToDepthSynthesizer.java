@@ -0,0 +1,62 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.moe.librealsense.Calibration;
+import org.moe.librealsense.RS;
+import org.moe.librealsense.geometry.ColorToDepthResampler;
+
+/**
+ * Synthesizer of RS.stream.color_aligned_to_depth backed by {@link ColorToDepthResampler}, gathering straight from the
+ * color frame buffer. Packed RGB formats keep their format, yuyv color is converted to rgb8 first. Compute calls are
+ * serialized because the gather table and the conversion buffer are shared across frame sets.
+ */
+public class ColorAlignedToDepthSynthesizer implements Synthesizer {
+    private final ColorToDepthResampler.Interpolation interpolation;
+    private final PackedColor packed = new PackedColor();
+
+    private Calibration calibration;
+    private int color_format;
+    private int out_format;
+    private ColorToDepthResampler resampler;
+
+    public ColorAlignedToDepthSynthesizer(ColorToDepthResampler.Interpolation interpolation) {
+        this.interpolation = interpolation;
+    }
+
+    @Override
+    public synchronized void compute(SyntheticStreams streams, FrameSet frames, FrameSet.Frame out) {
+        final FrameSet.Frame depth = frames.get(RS.stream.depth);
+        final FrameSet.Frame color = frames.get(RS.stream.color);
+        if (!depth.isPresent() || !color.isPresent()) {
+            throw new IllegalStateException("Frame set needs depth and color frames");
+        }
+        if (calibration != frames.getCalibration() || color_format != color.getFormat()) {
+            calibration = frames.getCalibration();
+            color_format = color.getFormat();
+            out_format = PackedColor.formatOf(color_format);
+            final int channels = FrameSet.frameSize(out_format, 1, 1);
+            resampler = new ColorToDepthResampler(calibration.getIntrinsics(RS.stream.depth),
+                    calibration.getExtrinsics(RS.stream.depth, RS.stream.color),
+                    calibration.getIntrinsics(RS.stream.color), calibration.getDepthScale(), channels, interpolation);
+        }
+
+        resampler.resample(depth.getData().asCharBuffer(), packed.pixels(color),
+                out.prepare(depth.getWidth(), depth.getHeight(), out_format, color.getTimestamp()));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.moe.librealsense.Calibration;
+import org.moe.librealsense.RS;
+import org.moe.librealsense.geometry.DepthToColorAligner;
+
+import java.nio.CharBuffer;
+
+/**
+ * Synthesizer of RS.stream.depth_aligned_to_color backed by {@link DepthToColorAligner}. Compute calls are serialized
+ * because the aligner and the intermediate images are shared across frame sets.
+ */
+public class DepthAlignedToColorSynthesizer implements Synthesizer {
+    private final int stripes;
+
+    private Calibration calibration;
+    private DepthToColorAligner aligner;
+    private char depth_data[];
+    private char aligned_data[];
+
+    /**
+     * @param stripes  number of parallel stripes, 1 aligns on the worker thread alone
+     */
+    public DepthAlignedToColorSynthesizer(int stripes) {
+        this.stripes = stripes;
+    }
+
+    @Override
+    public synchronized void compute(SyntheticStreams streams, FrameSet frames, FrameSet.Frame out) {
+        final FrameSet.Frame depth = frames.get(RS.stream.depth);
+        if (!depth.isPresent()) {
+            throw new IllegalStateException("Frame set has no depth frame");
+        }
+        if (calibration != frames.getCalibration()) {
+            calibration = frames.getCalibration();
+            aligner = new DepthToColorAligner(calibration.getIntrinsics(RS.stream.depth),
+                    calibration.getExtrinsics(RS.stream.depth, RS.stream.color),
+                    calibration.getIntrinsics(RS.stream.color), calibration.getDepthScale());
+            depth_data = new char[depth.getWidth() * depth.getHeight()];
+            aligned_data = new char[aligner.getColorIntrinsics().width * aligner.getColorIntrinsics().height];
+        }
+
+        depth.getData().asCharBuffer().get(depth_data);
+        aligner.alignParallel(depth_data, aligned_data, stripes);
+
+        final int width = aligner.getColorIntrinsics().width;
+        final int height = aligner.getColorIntrinsics().height;
+        final CharBuffer aligned = out.prepare(width, height, RS.format.z16.value, depth.getTimestamp()).asCharBuffer();
+        aligned.put(aligned_data);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.moe.librealsense.Calibration;
+import org.moe.librealsense.RS;
+
+/**
+ * Captures the enabled native streams of a started device into a pool of reused {@link FrameSet}s. A frame set is
+ * overwritten after poolSize further captures, so the pool must be larger than the number of sets in flight.
+ */
+public class DeviceFrameSource implements Source<FrameSet>, FrameCapture {
+    private final RS.device dev;
+    private final Calibration calibration;
+    private final RS.stream streams[];
+    private final int widths[];
+    private final int heights[];
+    private final int formats[];
+    private final int framerate;
+    private final FrameSet pool[];
+    private long sequence;
+
+    public DeviceFrameSource(RS.device dev, int poolSize) {
+        if (dev == null) {
+            throw new NullPointerException();
+        }
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("Invalid pool size " + poolSize);
+        }
+        this.dev = dev;
+        this.calibration = Calibration.read(dev);
+
+        // Stream layout does not change while streaming, query it once
+        int count = 0;
+        for (int s = 0; s < RS.stream.points.value; ++s) {
+            if (dev.is_stream_enabled(s)) ++count;
+        }
+        streams = new RS.stream[count];
+        widths = new int[count];
+        heights = new int[count];
+        formats = new int[count];
+        count = 0;
+        int framerate = 0;
+        for (int s = 0; s < RS.stream.points.value; ++s) {
+            if (!dev.is_stream_enabled(s)) continue;
+            streams[count] = RS.stream.fromValue(s);
+            widths[count] = dev.get_stream_width(s);
+            heights[count] = dev.get_stream_height(s);
+            formats[count] = dev.get_stream_format(s);
+            framerate = Math.max(framerate, dev.get_stream_framerate(s));
+            ++count;
+        }
+        this.framerate = framerate;
+
+        pool = new FrameSet[poolSize];
+        for (int i = 0; i < poolSize; ++i) {
+            pool[i] = new FrameSet();
+        }
+    }
+
+    public Calibration getCalibration() {
+        return calibration;
+    }
+
+    /**
+     * Highest framerate of the enabled streams, new frames arrive at most this often
+     */
+    public int getFramerate() {
+        return framerate;
+    }
+
+    /**
+     * Block until the device has new frames and copy them into the next pooled frame set
+     */
+    @Override
+    public FrameSet next() {
+        dev.wait_for_frames();
+        final FrameSet frames = pool[(int) (sequence % pool.length)];
+        capture(frames);
+        return frames;
+    }
+
+    /**
+     * Block until the device has new frames, without copying them
+     */
+    @Override
+    public void waitForFrames() {
+        dev.wait_for_frames();
+    }
+
+    /**
+     * Check whether the device has new frames, without blocking or copying them
+     */
+    @Override
+    public boolean pollForFrames() {
+        return dev.poll_for_frames();
+    }
+
+    /**
+     * Copy the current frames of the device into a frame set, without waiting
+     */
+    @Override
+    public void capture(FrameSet frames) {
+        frames.reset(sequence++, calibration);
+        for (int i = 0; i < streams.length; ++i) {
+            final int s = streams[i].value;
+            frames.get(streams[i]).copyFrom(dev.get_frame_data(s), widths[i], heights[i], formats[i],
+                    dev.get_frame_timestamp(s));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+/**
+ * Something that delivers frame sets into caller provided, reusable {@link FrameSet}s, usually a device.
+ */
+public interface FrameCapture {
+    /**
+     * Block until new frames are available
+     */
+    void waitForFrames() throws Exception;
+
+    /**
+     * Check for new frames without blocking, returns true if frames arrived since the last wait or poll
+     */
+    boolean pollForFrames() throws Exception;
+
+    /**
+     * Copy the current frames into a frame set
+     */
+    void capture(FrameSet frames) throws Exception;
+}
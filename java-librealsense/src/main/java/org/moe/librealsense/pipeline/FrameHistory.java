@@ -0,0 +1,246 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.moe.librealsense.RS;
+import org.moe.natj.general.ptr.BytePtr;
+import org.moe.natj.general.ptr.ConstVoidPtr;
+import org.moe.natj.general.ptr.impl.PtrFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The most recent frames of one stream in fixed off-heap slots, for algorithms which look back in time (motion
+ * detection, temporal filters). Frames are copied in with one memcpy and addressed by their sequence number, queries
+ * by recency or timestamp range do not allocate.
+ * <p>
+ * There must be a single writer, any number of threads may read. Instead of locks every slot carries a stamp: odd
+ * while the writer fills it, 2 * (sequence + 1) once frame 'sequence' is complete. A reader accesses a frame through
+ * {@link #view(long)} and then checks {@link #isValid(long)}; if the writer has meanwhile reused the slot, what was
+ * read must be discarded.
+ */
+public class FrameHistory {
+    private final int capacity;
+    private final int frameSize;
+    private final ByteBuffer slots[];
+    private final ByteBuffer views[];
+    private final BytePtr slotPtrs[];
+    private final AtomicLongArray stamps;
+    private final AtomicIntegerArray timestamps;
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * @param frameSize  bytes per frame, see {@link FrameSet#frameSize(int, int, int)}
+     */
+    public FrameHistory(int capacity, int frameSize) {
+        if (capacity < 2 || frameSize <= 0) {
+            throw new IllegalArgumentException("Invalid history size");
+        }
+        this.capacity = capacity;
+        this.frameSize = frameSize;
+        this.slots = new ByteBuffer[capacity];
+        this.views = new ByteBuffer[capacity];
+        this.slotPtrs = new BytePtr[capacity];
+        this.stamps = new AtomicLongArray(capacity);
+        this.timestamps = new AtomicIntegerArray(capacity);
+
+        final ByteBuffer memory = ByteBuffer.allocateDirect(capacity * frameSize);
+        for (int i = 0; i < capacity; ++i) {
+            memory.limit((i + 1) * frameSize).position(i * frameSize);
+            slots[i] = memory.slice().order(ByteOrder.nativeOrder());
+            views[i] = slots[i].asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * Copy a native frame, e.g. from RS.device.get_frame_data, into the oldest slot. Writer thread only.
+     *
+     * @return  the sequence number of the frame
+     */
+    public long append(ConstVoidPtr src, int timestamp) {
+        final long seq = count.get();
+        final int slot = begin(seq);
+        if (slotPtrs[slot] == null) {
+            slotPtrs[slot] = PtrFactory.newBytePtr(slots[slot]);
+        }
+        RS.memcpy(slotPtrs[slot], src, frameSize);
+        return end(seq, slot, timestamp);
+    }
+
+    /**
+     * Copy a frame from a buffer, e.g. a {@link FrameSet.Frame}, into the oldest slot. Writer thread only.
+     *
+     * @return  the sequence number of the frame
+     */
+    public long append(ByteBuffer src, int timestamp) {
+        if (src.remaining() < frameSize) {
+            throw new IllegalArgumentException("Frame is too small");
+        }
+        final long seq = count.get();
+        final int slot = begin(seq);
+        final ByteBuffer dst = slots[slot];
+        dst.clear();
+        final int limit = src.limit();
+        src.limit(src.position() + frameSize);
+        dst.put(src);
+        src.limit(limit);
+        return end(seq, slot, timestamp);
+    }
+
+    private int begin(long seq) {
+        final int slot = (int) (seq % capacity);
+        // getAndSet is a full fence, the frame data cannot be written before readers can see the odd stamp
+        stamps.getAndSet(slot, 2 * seq + 1);
+        return slot;
+    }
+
+    private long end(long seq, int slot, int timestamp) {
+        timestamps.set(slot, timestamp);
+        stamps.set(slot, 2 * (seq + 1));
+        count.set(seq + 1);
+        return seq;
+    }
+
+    /**
+     * Number of frames appended so far, the newest frame has sequence number getCount() - 1
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Sequence number of the k-th most recent frame (0 is the newest), or -1 if it is no longer or not yet held
+     */
+    public long recent(int k) {
+        final long seq = count.get() - 1 - k;
+        return k >= 0 && k < capacity - 1 && seq >= 0 ? seq : -1;
+    }
+
+    /**
+     * Timestamp of a frame, or -1 if the frame is not held
+     */
+    public long timestampOf(long seq) {
+        if (seq < 0) return -1;
+        final int slot = (int) (seq % capacity);
+        final int timestamp = timestamps.get(slot);
+        return stamps.get(slot) == 2 * (seq + 1) ? timestamp : -1;
+    }
+
+    /**
+     * Shared read-only view of a frame slot, valid only until the writer reuses it. Use absolute get methods only and
+     * check {@link #isValid(long)} after reading.
+     */
+    public ByteBuffer view(long seq) {
+        return views[(int) (seq % capacity)];
+    }
+
+    /**
+     * Determine if a slot still holds a frame, i.e. whether everything read through its view since is consistent
+     */
+    public boolean isValid(long seq) {
+        if (seq < 0) return false;
+        // A compare-and-set is a full fence, preceding reads of the frame data cannot be moved past it
+        final long stamp = 2 * (seq + 1);
+        return stamps.compareAndSet((int) (seq % capacity), stamp, stamp);
+    }
+
+    /**
+     * Copy a frame into dst at its position, without allocating
+     *
+     * @return  false if the frame is not held or was overwritten during the copy
+     */
+    public boolean copy(long seq, ByteBuffer dst) {
+        if (timestampOf(seq) < 0) return false;
+        if (dst.remaining() < frameSize) {
+            throw new IllegalArgumentException("Destination is too small");
+        }
+        final ByteBuffer src = slots[(int) (seq % capacity)];
+        final int base = dst.position();
+        final ByteOrder order = dst.order();
+        dst.order(ByteOrder.nativeOrder());
+        int i = 0;
+        for (; i + 8 <= frameSize; i += 8) {
+            dst.putLong(base + i, src.getLong(i));
+        }
+        for (; i < frameSize; ++i) {
+            dst.put(base + i, src.get(i));
+        }
+        dst.order(order);
+        if (!isValid(seq)) return false;
+        dst.position(base + frameSize);
+        return true;
+    }
+
+    /**
+     * Oldest held frame with a timestamp at or after t0, or -1
+     */
+    public long first(int t0) {
+        long lo = oldest(), hi = count.get() - 1;
+        while (lo <= hi) {
+            final long mid = (lo + hi) >>> 1;
+            final long t = timestampOf(mid);
+            if (t >= 0 && t < t0) {
+                lo = mid + 1;
+            } else if (t < 0) {
+                // Overwritten while searching, everything up to here is too old
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo < count.get() && timestampOf(lo) >= t0 ? lo : -1;
+    }
+
+    /**
+     * Newest held frame with a timestamp at or before t1, or -1
+     */
+    public long last(int t1) {
+        long lo = oldest(), hi = count.get() - 1;
+        long result = -1;
+        while (lo <= hi) {
+            final long mid = (lo + hi) >>> 1;
+            final long t = timestampOf(mid);
+            if (t < 0) {
+                lo = mid + 1;
+            } else if (t <= t1) {
+                result = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    // The slot after the newest may be overwritten at any time and is not considered held
+    private long oldest() {
+        return Math.max(0, count.get() - (capacity - 1));
+    }
+}
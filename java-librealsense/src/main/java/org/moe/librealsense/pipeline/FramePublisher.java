@@ -0,0 +1,467 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes captured frame sets to any number of subscribers, each receiving only as many as it has requested.
+ * <p>
+ * One acquisition thread captures into a fixed pool of frame sets, which are shared by reference count: a subscriber
+ * owns every frame set it receives in onNext and hands it back with {@link #release(FrameSet)} once done. When all
+ * pooled sets are still held the new frames are not captured at all. Frames a subscriber has not requested yet wait in a
+ * small per-subscriber buffer, and what happens when that buffer is full is decided by the {@link Overflow} strategy.
+ * Signals to a subscriber are serialized and run on the executor, never on the acquisition thread.
+ * <p>
+ * <pre>
+ * FramePublisher publisher = new FramePublisher(new DeviceFrameSource(dev, 1), 8, 2, FramePublisher.Overflow.DROP_OLDEST);
+ * publisher.subscribe(subscriber);
+ * publisher.start();
+ * </pre>
+ */
+public class FramePublisher implements Flow.Publisher<FrameSet> {
+    /**
+     * What happens to a new frame when a subscriber's buffer is full
+     */
+    public enum Overflow {
+        /**
+         * Discard the new frame, the subscriber keeps the older buffered ones
+         */
+        DROP_NEWEST,
+        /**
+         * Discard the oldest buffered frame, the subscriber always gets the most recent ones
+         */
+        DROP_OLDEST,
+        /**
+         * Fail the subscriber with an {@link IllegalStateException}
+         */
+        ERROR,
+    }
+
+    private final FrameCapture capture;
+    private final FrameSet pool[];
+    private final AtomicIntegerArray references;
+    private final ArrayBlockingQueue<FrameSet> free;
+    private final int bufferSize;
+    private final Overflow overflow;
+    private final Executor executor;
+
+    private final Object lock = new Object();
+    private volatile Subscription subscriptions[] = new Subscription[0];
+    private volatile Thread thread;
+    private volatile boolean running;
+    private volatile boolean terminated;
+    private volatile Throwable failure;
+
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong starved = new AtomicLong();
+
+    /**
+     * @param poolSize    number of frame sets shared by all subscribers
+     * @param bufferSize  frames buffered per subscriber while it has no outstanding demand
+     * @param executor    runs the subscriber callbacks
+     */
+    public FramePublisher(FrameCapture capture, int poolSize, int bufferSize, Overflow overflow, Executor executor) {
+        if (capture == null || overflow == null || executor == null) {
+            throw new NullPointerException();
+        }
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("Invalid pool size " + poolSize);
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Invalid buffer size " + bufferSize);
+        }
+        this.capture = capture;
+        this.bufferSize = bufferSize;
+        this.overflow = overflow;
+        this.executor = executor;
+        pool = new FrameSet[poolSize];
+        references = new AtomicIntegerArray(poolSize);
+        free = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; ++i) {
+            pool[i] = new FrameSet();
+            free.add(pool[i]);
+        }
+    }
+
+    /**
+     * Publisher delivering on its own daemon threads, at most one per subscriber at a time. A subscriber doing slow
+     * work in onNext then does not hold back the others, which is not guaranteed with a shared fork-join pool.
+     */
+    public FramePublisher(FrameCapture capture, int poolSize, int bufferSize, Overflow overflow) {
+        this(capture, poolSize, bufferSize, overflow, Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable);
+            thread.setName("FramePublisher subscriber");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super FrameSet> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException();
+        }
+        final Subscription subscription = new Subscription(subscriber);
+        // onSubscribe runs before the subscription is visible to the acquisition thread, so it always comes first
+        subscriber.onSubscribe(subscription);
+        synchronized (lock) {
+            if (!terminated) {
+                final Subscription current[] = subscriptions;
+                final Subscription next[] = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = subscription;
+                subscriptions = next;
+                return;
+            }
+        }
+        // Already completed or failed, late subscribers get the terminal signal right away
+        subscription.terminate(failure);
+    }
+
+    private void remove(Subscription subscription) {
+        synchronized (lock) {
+            final Subscription current[] = subscriptions;
+            for (int i = 0; i < current.length; ++i) {
+                if (current[i] != subscription) continue;
+                final Subscription next[] = new Subscription[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                subscriptions = next;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Start the acquisition thread
+     */
+    public synchronized void start() {
+        if (running || terminated) {
+            throw new IllegalStateException("Publisher can only be started once");
+        }
+        running = true;
+        thread = new Thread(this::run);
+        thread.setName("FramePublisher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop capturing and wait for the acquisition thread to exit. Subscribers complete once they have consumed what is
+     * buffered for them.
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        final Thread thread = this.thread;
+        if (thread != null) {
+            thread.interrupt();
+            thread.join();
+            this.thread = null;
+        }
+        terminate(null);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * The exception which stopped the acquisition, or null
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Number of frame sets captured and offered to the subscribers
+     */
+    public long getCaptured() {
+        return captured.get();
+    }
+
+    /**
+     * Number of frames not captured because every pooled frame set was still held
+     */
+    public long getStarved() {
+        return starved.get();
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.length;
+    }
+
+    /**
+     * Hand back a frame set received in onNext. Each delivered frame set must be released exactly once.
+     */
+    public void release(FrameSet frames) {
+        final int index = indexOf(frames);
+        final int left = references.decrementAndGet(index);
+        if (left == 0) {
+            free.add(frames);
+        } else if (left < 0) {
+            references.incrementAndGet(index);
+            throw new IllegalStateException("Frame set released more often than delivered");
+        }
+    }
+
+    private void retain(FrameSet frames) {
+        references.incrementAndGet(indexOf(frames));
+    }
+
+    private int indexOf(FrameSet frames) {
+        // The pool is small, a scan is cheaper than a map lookup
+        for (int i = 0; i < pool.length; ++i) {
+            if (pool[i] == frames) return i;
+        }
+        throw new IllegalArgumentException("Frame set does not belong to this publisher");
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                capture.waitForFrames();
+                final FrameSet frames = free.poll();
+                if (frames == null) {
+                    starved.incrementAndGet();
+                    continue;
+                }
+
+                // The publisher holds one reference while offering, so the set cannot be freed halfway
+                references.set(indexOf(frames), 1);
+                capture.capture(frames);
+                captured.incrementAndGet();
+                for (Subscription subscription : subscriptions) {
+                    subscription.offer(frames);
+                }
+                release(frames);
+            }
+        } catch (InterruptedException ex) {
+            // Stopped
+        } catch (Throwable ex) {
+            if (running) {
+                failure = ex;
+                running = false;
+                terminate(ex);
+            }
+        }
+    }
+
+    private void terminate(Throwable error) {
+        final Subscription current[];
+        synchronized (lock) {
+            if (terminated) return;
+            terminated = true;
+            current = subscriptions;
+            subscriptions = new Subscription[0];
+        }
+        for (Subscription subscription : current) {
+            subscription.terminate(error);
+        }
+    }
+
+    /**
+     * One subscriber's demand, buffer and counters
+     */
+    public class Subscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super FrameSet> subscriber;
+        private final ArrayDeque<FrameSet> buffer;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile boolean completed;
+        private volatile Throwable error;
+        // Only touched by the drain loop, which never runs concurrently with itself
+        private boolean done;
+        // Guarded by the buffer, set once the buffer has been released for good
+        private boolean closed;
+
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+
+        private Subscription(Flow.Subscriber<? super FrameSet> subscriber) {
+            this.subscriber = subscriber;
+            this.buffer = new ArrayDeque<>(bufferSize);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Requested " + n + " elements"));
+                return;
+            }
+            long current, next;
+            do {
+                current = demand.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!demand.compareAndSet(current, next));
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        /**
+         * Frames delivered to the subscriber so far
+         */
+        public long getDelivered() {
+            return delivered.get();
+        }
+
+        /**
+         * Frames dropped because the buffer was full
+         */
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        /**
+         * Number of frames the subscriber has requested and not received yet
+         */
+        public long getDemand() {
+            return demand.get();
+        }
+
+        // Acquisition thread: queue a captured frame set for this subscriber
+        private void offer(FrameSet frames) {
+            if (cancelled) return;
+            FrameSet evicted = null;
+            synchronized (buffer) {
+                if (closed) return;
+                if (buffer.size() >= bufferSize) {
+                    switch (overflow) {
+                        case DROP_NEWEST:
+                            skipped.incrementAndGet();
+                            return;
+                        case DROP_OLDEST:
+                            evicted = buffer.poll();
+                            skipped.incrementAndGet();
+                            break;
+                        case ERROR:
+                            fail(new IllegalStateException("Subscriber buffer overflow, " + bufferSize
+                                    + " frames pending without demand"));
+                            return;
+                    }
+                }
+                retain(frames);
+                buffer.add(frames);
+            }
+            if (evicted != null) {
+                release(evicted);
+            }
+            schedule();
+        }
+
+        private void fail(Throwable ex) {
+            error = ex;
+            cancelled = true;
+            schedule();
+        }
+
+        private void terminate(Throwable ex) {
+            if (ex != null) {
+                error = ex;
+            }
+            completed = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (!done && !deliver()) {
+                    // Yield the executor thread to the other subscribers, wip stays non-zero so nobody else drains
+                    executor.execute(this::drain);
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        // Returns false if it stopped early to keep a fast producer and subscriber from monopolizing the executor
+        private boolean deliver() {
+            int budget = bufferSize;
+            while (!cancelled && demand.get() > 0) {
+                if (budget-- == 0) return false;
+                final FrameSet frames;
+                synchronized (buffer) {
+                    frames = buffer.poll();
+                }
+                if (frames == null) break;
+                demand.decrementAndGet();
+                delivered.incrementAndGet();
+                try {
+                    subscriber.onNext(frames);
+                } catch (Throwable ex) {
+                    // A throwing subscriber is treated as cancelled, see the reactive streams rule 2.13
+                    cancelled = true;
+                }
+            }
+
+            final Throwable error = this.error;
+            final boolean empty;
+            synchronized (buffer) {
+                empty = buffer.isEmpty();
+            }
+            if (cancelled || error != null || (completed && empty)) {
+                done = true;
+                remove(this);
+                clear();
+                if (error != null) {
+                    subscriber.onError(error);
+                } else if (completed && !cancelled) {
+                    subscriber.onComplete();
+                }
+            }
+            return true;
+        }
+
+        private void clear() {
+            final FrameSet pending[];
+            synchronized (buffer) {
+                closed = true;
+                pending = buffer.toArray(new FrameSet[0]);
+                buffer.clear();
+            }
+            for (FrameSet frames : pending) {
+                release(frames);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Subscription delivered " + delivered.get() + ", skipped " + skipped.get() + ", demand "
+                    + demand.get();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.moe.librealsense.Calibration;
+import org.moe.librealsense.RS;
+import org.moe.natj.general.ptr.BytePtr;
+import org.moe.natj.general.ptr.ConstVoidPtr;
+import org.moe.natj.general.ptr.impl.PtrFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * One coherent set of frames, i.e. what a device exposes between two wait_for_frames() calls, copied into direct
+ * buffers owned by Java. Frame sets are meant to be pooled: {@link #reset(long, Calibration)} recycles the buffers for
+ * the next capture.
+ */
+public class FrameSet {
+    public static final int STREAM_COUNT = RS.stream.values().length;
+
+    public static class Frame {
+        private final RS.stream stream;
+        private ByteBuffer data;
+        private BytePtr dataPtr;
+        private int width;
+        private int height;
+        private int format;
+        private int timestamp;
+        private boolean present;
+
+        Frame(RS.stream stream) {
+            this.stream = stream;
+        }
+
+        public RS.stream getStream() {
+            return stream;
+        }
+
+        /**
+         * False if the stream is not part of this frame set, or a synthetic stream was not computed yet
+         */
+        public boolean isPresent() {
+            return present;
+        }
+
+        /**
+         * Frame contents in native byte order, the limit is the frame size
+         */
+        public ByteBuffer getData() {
+            return data;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Pixel format, as an RS.format value
+         */
+        public int getFormat() {
+            return format;
+        }
+
+        /**
+         * Capture time in milliseconds since the device was started
+         */
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Size this frame and mark it present, the buffer is reused if it is large enough
+         */
+        public ByteBuffer prepare(int width, int height, int format, int timestamp) {
+            final int size = frameSize(format, width, height);
+            if (data == null || data.capacity() < size) {
+                data = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+                dataPtr = null;
+            }
+            data.clear().limit(size);
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.timestamp = timestamp;
+            this.present = true;
+            return data;
+        }
+
+        /**
+         * Copy a native frame, e.g. from RS.device.get_frame_data, with a single memcpy
+         */
+        public void copyFrom(ConstVoidPtr src, int width, int height, int format, int timestamp) {
+            prepare(width, height, format, timestamp);
+            if (dataPtr == null) {
+                dataPtr = PtrFactory.newBytePtr(data);
+            }
+            RS.memcpy(dataPtr, src, data.limit());
+        }
+    }
+
+    private final Frame frames[] = new Frame[STREAM_COUNT];
+    private final AtomicReferenceArray<CompletableFuture<Frame>> derived = new AtomicReferenceArray<>(STREAM_COUNT);
+    private Calibration calibration;
+    private long sequence;
+
+    public FrameSet() {
+        for (RS.stream stream : RS.stream.values()) {
+            frames[stream.value] = new Frame(stream);
+        }
+    }
+
+    /**
+     * Number of bytes of a frame
+     */
+    public static int frameSize(int format, int width, int height) {
+        final int pixels = width * height;
+        switch (RS.format.fromValue(format)) {
+            case z16:
+            case disparity16:
+            case yuyv:
+            case y16:
+                return pixels * 2;
+            case xyz32f:
+                return pixels * 12;
+            case rgb8:
+            case bgr8:
+                return pixels * 3;
+            case rgba8:
+            case bgra8:
+                return pixels * 4;
+            case y8:
+                return pixels;
+            case raw10:
+                return pixels / 4 * 5;
+            default:
+                throw new IllegalArgumentException("Frame size of format " + format + " is unknown");
+        }
+    }
+
+    /**
+     * Mark all frames absent and forget computed synthetic streams, before a new capture into this set
+     */
+    public void reset(long sequence, Calibration calibration) {
+        for (Frame frame : frames) {
+            frame.present = false;
+        }
+        for (int i = 0; i < STREAM_COUNT; ++i) {
+            derived.set(i, null);
+        }
+        this.sequence = sequence;
+        this.calibration = calibration;
+    }
+
+    /**
+     * Capture counter of the source, increases by one per captured set
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Calibration getCalibration() {
+        return calibration;
+    }
+
+    public Frame get(RS.stream stream) {
+        return frames[stream.value];
+    }
+
+    public boolean has(RS.stream stream) {
+        return frames[stream.value].present;
+    }
+
+    CompletableFuture<Frame> getDerived(RS.stream stream) {
+        return derived.get(stream.value);
+    }
+
+    boolean setDerived(RS.stream stream, CompletableFuture<Frame> future) {
+        return derived.compareAndSet(stream.value, null, future);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.moe.librealsense.Calibration;
+import org.moe.librealsense.RS;
+import org.moe.librealsense.geometry.ColorToDepthResampler;
+
+/**
+ * Synthesizer of RS.stream.infrared2_aligned_to_depth: the second infrared image reprojected through the depth of every
+ * depth pixel, backed by {@link ColorToDepthResampler} like {@link ColorAlignedToDepthSynthesizer}. y8 frames use the
+ * requested interpolation, y16 frames are always sampled nearest because the resampler interpolates bytes. Compute
+ * calls are serialized because the gather table is shared across frame sets.
+ */
+public class Infrared2AlignedToDepthSynthesizer implements Synthesizer {
+    private final ColorToDepthResampler.Interpolation interpolation;
+
+    private Calibration calibration;
+    private int infrared_format;
+    private ColorToDepthResampler resampler;
+
+    public Infrared2AlignedToDepthSynthesizer(ColorToDepthResampler.Interpolation interpolation) {
+        this.interpolation = interpolation;
+    }
+
+    @Override
+    public synchronized void compute(SyntheticStreams streams, FrameSet frames, FrameSet.Frame out) {
+        final FrameSet.Frame depth = frames.get(RS.stream.depth);
+        final FrameSet.Frame infrared = frames.get(RS.stream.infrared2);
+        if (!depth.isPresent() || !infrared.isPresent()) {
+            throw new IllegalStateException("Frame set needs depth and second infrared frames");
+        }
+        if (calibration != frames.getCalibration() || infrared_format != infrared.getFormat()) {
+            calibration = frames.getCalibration();
+            infrared_format = infrared.getFormat();
+            final ColorToDepthResampler.Interpolation sampling;
+            switch (RS.format.fromValue(infrared_format)) {
+                case y8:
+                    sampling = interpolation;
+                    break;
+                case y16:
+                    sampling = ColorToDepthResampler.Interpolation.NEAREST;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Cannot align infrared frames of format " + infrared_format);
+            }
+            resampler = new ColorToDepthResampler(calibration.getIntrinsics(RS.stream.depth),
+                    calibration.getExtrinsics(RS.stream.depth, RS.stream.infrared2),
+                    calibration.getIntrinsics(RS.stream.infrared2), calibration.getDepthScale(),
+                    FrameSet.frameSize(infrared_format, 1, 1), sampling);
+        }
+
+        resampler.resample(depth.getData().asCharBuffer(), infrared.getData(),
+                out.prepare(depth.getWidth(), depth.getHeight(), infrared_format, infrared.getTimestamp()));
+    }
+}
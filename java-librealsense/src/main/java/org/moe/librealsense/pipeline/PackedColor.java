@@ -0,0 +1,88 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.moe.librealsense.RS;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Color frames as images whose pixels can be gathered one by one: packed RGB formats as they are, yuyv converted to
+ * rgb8 into a reused buffer. Not thread safe, each synthesizer owns one.
+ */
+final class PackedColor {
+    private ByteBuffer rgb;
+
+    /**
+     * Format of the pixels returned for color frames of this format
+     */
+    static int formatOf(int format) {
+        switch (RS.format.fromValue(format)) {
+            case rgb8:
+            case bgr8:
+            case rgba8:
+            case bgra8:
+                return format;
+            case yuyv:
+                return RS.format.rgb8.value;
+            default:
+                throw new IllegalArgumentException("Cannot resample color frames of format " + format);
+        }
+    }
+
+    /**
+     * Pixels of a color frame in {@link #formatOf} its format, valid until the next call
+     */
+    ByteBuffer pixels(FrameSet.Frame color) {
+        if (formatOf(color.getFormat()) == color.getFormat()) {
+            return color.getData();
+        }
+        final int pixels = color.getWidth() * color.getHeight();
+        if (rgb == null || rgb.capacity() < pixels * 3) {
+            rgb = ByteBuffer.allocateDirect(pixels * 3).order(ByteOrder.nativeOrder());
+        }
+        rgb.clear().limit(pixels * 3);
+        yuyvToRgb(color.getData(), rgb, pixels);
+        return rgb;
+    }
+
+    // BT.601 conversion, every 4 bytes Y0 U Y1 V hold two pixels sharing their chroma
+    private static void yuyvToRgb(ByteBuffer yuyv, ByteBuffer rgb, int pixels) {
+        for (int p = 0; p + 1 < pixels; p += 2) {
+            final int i = p * 2;
+            final int u = (yuyv.get(i + 1) & 0xFF) - 128;
+            final int v = (yuyv.get(i + 3) & 0xFF) - 128;
+            final int r = 359 * v;
+            final int g = -88 * u - 183 * v;
+            final int b = 454 * u;
+            for (int k = 0; k < 2; ++k) {
+                final int y = (yuyv.get(i + k * 2) & 0xFF) << 8;
+                final int o = (p + k) * 3;
+                rgb.put(o, clamp(y + r));
+                rgb.put(o + 1, clamp(y + g));
+                rgb.put(o + 2, clamp(y + b));
+            }
+        }
+    }
+
+    private static byte clamp(int value) {
+        value >>= 8;
+        return (byte) (value < 0 ? 0 : value > 255 ? 255 : value);
+    }
+}
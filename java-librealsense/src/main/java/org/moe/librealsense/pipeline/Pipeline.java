@@ -0,0 +1,210 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Headless frame processing loop: a source followed by a chain of stages, each driven by a dedicated thread and
+ * connected to its predecessor through a bounded {@link SpscRing}. Unlike the JOGL Animator loop in the samples, the
+ * throughput is not tied to rendering, and every stage can run on its own core.
+ * <p>
+ * <pre>
+ * Pipeline pipeline = Pipeline.from("acquire", acquire)
+ *         .then("convert", convert, 2, Backpressure.BLOCK)
+ *         .then("deproject", deproject, 2, Backpressure.DROP_OLDEST)
+ *         .to("sink", sink, 4, Backpressure.DROP_OLDEST);
+ * pipeline.start();
+ * </pre>
+ */
+public class Pipeline {
+    private final List<Node> nodes;
+    private final List<StageStats> stats;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean running;
+
+    private Pipeline(List<Node> nodes) {
+        this.nodes = nodes;
+        final List<StageStats> stats = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            stats.add(node.stats);
+        }
+        this.stats = Collections.unmodifiableList(stats);
+    }
+
+    public static <T> Builder<T> from(String name, Source<T> source) {
+        if (source == null) {
+            throw new NullPointerException();
+        }
+        final List<Node> nodes = new ArrayList<>();
+        nodes.add(new Node(name, source, null, null));
+        return new Builder<>(nodes);
+    }
+
+    public static class Builder<T> {
+        private final List<Node> nodes;
+
+        private Builder(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        /**
+         * Append a stage
+         *
+         * @param capacity  size of the ring between the previous step and this stage
+         * @param policy    what happens when that ring is full
+         */
+        public <R> Builder<R> then(String name, Stage<? super T, ? extends R> stage, int capacity, Backpressure policy) {
+            if (stage == null) {
+                throw new NullPointerException();
+            }
+            nodes.add(new Node(name, stage, new SpscRing<>(capacity), policy));
+            return new Builder<>(nodes);
+        }
+
+        /**
+         * Append the final stage and create the pipeline
+         */
+        public Pipeline to(String name, Sink<? super T> sink, int capacity, Backpressure policy) {
+            if (sink == null) {
+                throw new NullPointerException();
+            }
+            nodes.add(new Node(name, sink, new SpscRing<>(capacity), policy));
+            return new Pipeline(new ArrayList<>(nodes));
+        }
+    }
+
+    private static class Node {
+        final String name;
+        final Object step;
+        final SpscRing<Object> input;
+        final Backpressure policy;
+        final StageStats stats;
+        volatile Thread thread;
+
+        Node(String name, Object step, SpscRing<Object> input, Backpressure policy) {
+            if (input != null && policy == null) {
+                throw new NullPointerException();
+            }
+            this.name = name;
+            this.step = step;
+            this.input = input;
+            this.policy = policy;
+            this.stats = new StageStats(name);
+        }
+    }
+
+    /**
+     * Start one thread per stage
+     */
+    public synchronized void start() {
+        if (running || nodes.get(0).thread != null) {
+            throw new IllegalStateException("Pipeline must be stopped before it is started");
+        }
+        running = true;
+        for (int i = 0; i < nodes.size(); ++i) {
+            final Node node = nodes.get(i);
+            final Node next = i + 1 < nodes.size() ? nodes.get(i + 1) : null;
+            node.thread = new Thread(() -> run(node, next));
+            node.thread.setName("Pipeline " + node.name);
+            node.thread.setDaemon(true);
+        }
+        for (Node node : nodes) {
+            node.thread.start();
+        }
+    }
+
+    /**
+     * Stop all stages and wait for their threads to exit. Elements still queued in the rings are discarded.
+     */
+    public synchronized void stop() throws InterruptedException {
+        halt();
+        for (Node node : nodes) {
+            if (node.thread != null) {
+                node.thread.join();
+                node.thread = null;
+            }
+        }
+    }
+
+    private void halt() {
+        running = false;
+        for (Node node : nodes) {
+            final Thread thread = node.thread;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * The exception which stopped the pipeline, or null
+     */
+    public Throwable getFailure() {
+        return failure.get();
+    }
+
+    /**
+     * Per-stage counters, in pipeline order
+     */
+    public List<StageStats> getStats() {
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void run(Node node, Node next) {
+        try {
+            while (running) {
+                final Object in = node.input == null ? null : node.input.take();
+                final long start = System.nanoTime();
+                final Object out;
+                if (node.input == null) {
+                    out = ((Source<Object>) node.step).next();
+                } else if (next != null) {
+                    out = ((Stage<Object, Object>) node.step).process(in);
+                } else {
+                    ((Sink<Object>) node.step).accept(in);
+                    out = null;
+                }
+                node.stats.record(System.nanoTime() - start);
+
+                if (out != null && next != null) {
+                    if (next.policy == Backpressure.BLOCK) {
+                        next.input.put(out);
+                    } else {
+                        final int dropped = next.input.putDropOldest(out);
+                        if (dropped != 0) next.stats.drop(dropped);
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            // Stopped
+        } catch (Throwable ex) {
+            if (failure.compareAndSet(null, ex)) {
+                halt();
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.moe.librealsense.Intrinsics;
+import org.moe.librealsense.RS;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Synthesizer of RS.stream.points: every depth pixel deprojected to a 3D point in meters (xyz32f), pixels without
+ * depth become (0, 0, 0)
+ */
+public class PointsSynthesizer implements Synthesizer {
+    @Override
+    public void compute(SyntheticStreams streams, FrameSet frames, FrameSet.Frame out) {
+        final FrameSet.Frame depth = frames.get(RS.stream.depth);
+        if (!depth.isPresent()) {
+            throw new IllegalStateException("Frame set has no depth frame");
+        }
+        final Intrinsics depth_intrin = frames.getCalibration().getIntrinsics(RS.stream.depth);
+        final float scale = frames.getCalibration().getDepthScale();
+
+        final int width = depth.getWidth();
+        final int height = depth.getHeight();
+        final CharBuffer depth_data = depth.getData().asCharBuffer();
+        final ByteBuffer points = out.prepare(width, height, RS.format.xyz32f.value, depth.getTimestamp());
+        final FloatBuffer point_data = points.asFloatBuffer();
+
+        final float depth_pixel[] = new float[2];
+        final float depth_point[] = new float[3];
+        for (int dy = 0, i = 0; dy < height; ++dy) {
+            for (int dx = 0; dx < width; ++dx, ++i) {
+                final char depth_value = depth_data.get(i);
+                if (depth_value == 0) {
+                    point_data.put(i * 3, 0).put(i * 3 + 1, 0).put(i * 3 + 2, 0);
+                    continue;
+                }
+                depth_pixel[0] = dx;
+                depth_pixel[1] = dy;
+                depth_intrin.deproject(depth_point, depth_pixel, depth_value * scale);
+                point_data.put(i * 3, depth_point[0]).put(i * 3 + 1, depth_point[1]).put(i * 3 + 2, depth_point[2]);
+            }
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps frame processing within the frame period by trading quality for time. Stages report how long each frame took
+ * them, and when the smoothed time of the slowest one stays above the target, the controller steps down to the next
+ * cheaper {@link Level}; when it stays well below the target for long enough, it steps back up. Stages read the
+ * current level for every frame and apply its knobs: decimation, region of interest, parallelism, and which optional
+ * stages run.
+ * <p>
+ * Every measured stage reports each frame, but a frame only counts towards a decision once the stage measured last,
+ * the most downstream one, has reported it; so the hysteresis below is in frames whatever the number of stages.
+ * <p>
+ * Stepping down reacts within a few frames, stepping up takes much longer and the wait doubles every time a step up
+ * had to be taken back within that wait, so the level does not oscillate around the limit.
+ * <pre>
+ * QualityController quality = new QualityController(source.getFramerate(),
+ *         QualityController.defaultLevels(Stripes.defaultCount(), "normals"));
+ * Pipeline pipeline = Pipeline.from("acquire", source)
+ *         .then("deproject", quality.measure("deproject", deproject), 2, Backpressure.DROP_OLDEST)
+ *         .to("render", sink, 2, Backpressure.DROP_OLDEST);
+ * ...
+ * QualityController.Level level = quality.getLevel();  // inside a stage, once per frame
+ * </pre>
+ */
+public class QualityController {
+    /**
+     * One set of knob settings, level 0 being the full quality
+     */
+    public static final class Level {
+        private final String name;
+        private final int decimation;
+        private final float roi;
+        private final int stripes;
+        private final Set<String> disabled;
+
+        /**
+         * @param decimation  process every n-th pixel of every n-th row
+         * @param roi         fraction of the width and height to process, centered in the frame
+         * @param stripes     parallelism of the stages that support it
+         * @param disabled    names of the optional stages skipped at this level
+         */
+        public Level(String name, int decimation, float roi, int stripes, String... disabled) {
+            if (decimation <= 0 || !(roi > 0 && roi <= 1) || stripes <= 0) {
+                throw new IllegalArgumentException("Invalid level " + name);
+            }
+            this.name = name;
+            this.decimation = decimation;
+            this.roi = roi;
+            this.stripes = stripes;
+            this.disabled = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(disabled)));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDecimation() {
+            return decimation;
+        }
+
+        public float getRoi() {
+            return roi;
+        }
+
+        public int getStripes() {
+            return stripes;
+        }
+
+        /**
+         * False if the optional stage of this name should be skipped
+         */
+        public boolean isEnabled(String stage) {
+            return !disabled.contains(stage);
+        }
+
+        /**
+         * First column of the region of interest in a frame of this width
+         */
+        public int getRoiLeft(int width) {
+            return (width - getRoiWidth(width)) / 2;
+        }
+
+        public int getRoiWidth(int width) {
+            return Math.max(1, Math.round(width * roi));
+        }
+
+        /**
+         * First row of the region of interest in a frame of this height
+         */
+        public int getRoiTop(int height) {
+            return (height - getRoiHeight(height)) / 2;
+        }
+
+        public int getRoiHeight(int height) {
+            return Math.max(1, Math.round(height * roi));
+        }
+
+        @Override
+        public String toString() {
+            return name + " (decimation " + decimation + ", roi " + roi + ", " + stripes + " stripes"
+                    + (disabled.isEmpty() ? "" : ", without " + disabled) + ")";
+        }
+    }
+
+    /**
+     * A change of level and the measurement which caused it
+     */
+    public static final class Decision {
+        public final long frame;          /* frames completed when the decision was taken */
+        public final int from;
+        public final int to;
+        public final double latencyMillis; /* smoothed time of the slowest stage */
+
+        Decision(long frame, int from, int to, double latencyMillis) {
+            this.frame = frame;
+            this.from = from;
+            this.to = to;
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("frame %d: level %d -> %d at %.2f ms", frame, from, to, latencyMillis);
+        }
+    }
+
+    /**
+     * Time measurements of one stage
+     */
+    public final class Probe {
+        private final String name;
+        private double smoothed; /* ns, 0 until the first measurement at the current level */
+        private volatile long last;
+
+        private Probe(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Smoothed processing time per frame at the current level
+         */
+        public double getSmoothedMillis() {
+            synchronized (QualityController.this) {
+                return smoothed / 1e6;
+            }
+        }
+
+        public double getLastMillis() {
+            return last / 1e6;
+        }
+
+        /**
+         * Report how long the stage took for one frame, completing the frame if this is the most downstream probe
+         */
+        public void record(long nanos) {
+            last = nanos;
+            QualityController.this.record(this, nanos);
+        }
+    }
+
+    private static final double SMOOTHING = 0.125;
+    private static final int MAX_PENALTY = 16;
+    private static final int HISTORY = 64;
+
+    private final long period;
+    private final List<Level> levels;
+    private final List<Probe> probes = new ArrayList<>();
+    private final ArrayDeque<Decision> decisions = new ArrayDeque<>();
+
+    private double target = 0.8;
+    private double upgradeMargin = 0.6;
+    private int degradeFrames = 3;
+    private int upgradeFrames = 60;
+
+    private volatile int level;
+    private long frames;
+    private int over;
+    private int under;
+    private int penalty = 1;
+    private long lastUpgrade = -1;
+    private long lastDegrade = -1;
+    private long degrades;
+    private long upgrades;
+
+    /**
+     * @param framerate  rate of new frames, e.g. from {@link DeviceFrameSource#getFramerate()}
+     * @param levels     from full quality to cheapest
+     */
+    public QualityController(double framerate, List<Level> levels) {
+        if (!(framerate > 0)) {
+            throw new IllegalArgumentException("Invalid framerate " + framerate);
+        }
+        if (levels.isEmpty()) {
+            throw new IllegalArgumentException("At least one level is required");
+        }
+        this.period = (long) (TimeUnit.SECONDS.toNanos(1) / framerate);
+        this.levels = Collections.unmodifiableList(new ArrayList<>(levels));
+    }
+
+    /**
+     * Levels trading parallelism first, then the optional stages, resolution and field of view
+     */
+    public static List<Level> defaultLevels(int stripes, String... optional) {
+        final List<Level> levels = new ArrayList<>();
+        levels.add(new Level("full", 1, 1, 1));
+        if (stripes > 1) {
+            levels.add(new Level("parallel", 1, 1, stripes));
+        }
+        if (optional.length != 0) {
+            levels.add(new Level("essential", 1, 1, stripes, optional));
+        }
+        levels.add(new Level("decimated", 2, 1, stripes, optional));
+        levels.add(new Level("cropped", 2, 0.75f, stripes, optional));
+        levels.add(new Level("minimal", 4, 0.5f, stripes, optional));
+        return levels;
+    }
+
+    /**
+     * Keep the slowest stage under this fraction of the frame period, 0.8 by default
+     */
+    public synchronized void setTarget(double fraction) {
+        if (!(fraction > 0)) {
+            throw new IllegalArgumentException("Invalid target " + fraction);
+        }
+        this.target = fraction;
+    }
+
+    /**
+     * Hysteresis: step down after this many frames over the target, step up after this many frames under the given
+     * fraction of the target. Defaults are 3, 60 and 0.6.
+     */
+    public synchronized void setHysteresis(int degradeFrames, int upgradeFrames, double upgradeMargin) {
+        if (degradeFrames <= 0 || upgradeFrames <= 0 || !(upgradeMargin > 0 && upgradeMargin < 1)) {
+            throw new IllegalArgumentException("Invalid hysteresis");
+        }
+        this.degradeFrames = degradeFrames;
+        this.upgradeFrames = upgradeFrames;
+        this.upgradeMargin = upgradeMargin;
+    }
+
+    /**
+     * Add a measured stage, the level is driven by the slowest one. Add them in pipeline order: the probe added last
+     * completes the frames.
+     */
+    public synchronized Probe probe(String name) {
+        final Probe probe = new Probe(name);
+        probes.add(probe);
+        return probe;
+    }
+
+    /**
+     * Wrap a stage so that its processing time is measured
+     */
+    public <I, O> Stage<I, O> measure(String name, Stage<I, O> stage) {
+        if (stage == null) {
+            throw new NullPointerException();
+        }
+        final Probe probe = probe(name);
+        return input -> {
+            final long start = System.nanoTime();
+            final O output = stage.process(input);
+            probe.record(System.nanoTime() - start);
+            return output;
+        };
+    }
+
+    /**
+     * Wrap a sink so that its processing time is measured
+     */
+    public <I> Sink<I> measureSink(String name, Sink<I> sink) {
+        if (sink == null) {
+            throw new NullPointerException();
+        }
+        final Probe probe = probe(name);
+        return input -> {
+            final long start = System.nanoTime();
+            sink.accept(input);
+            probe.record(System.nanoTime() - start);
+        };
+    }
+
+    public List<Level> getLevels() {
+        return levels;
+    }
+
+    /**
+     * Settings to apply to the current frame
+     */
+    public Level getLevel() {
+        return levels.get(level);
+    }
+
+    public int getLevelIndex() {
+        return level;
+    }
+
+    /**
+     * Processing time per frame the controller aims to stay under
+     */
+    public synchronized double getTargetMillis() {
+        return period * target / 1e6;
+    }
+
+    /**
+     * Smoothed time of the slowest measured stage
+     */
+    public synchronized double getLatencyMillis() {
+        return slowest() / 1e6;
+    }
+
+    /**
+     * Number of frames completed, as reported by the most downstream probe
+     */
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Number of steps down to a cheaper level
+     */
+    public synchronized long getDegrades() {
+        return degrades;
+    }
+
+    /**
+     * Number of steps up to a better level
+     */
+    public synchronized long getUpgrades() {
+        return upgrades;
+    }
+
+    /**
+     * Current multiplier of the wait before stepping up, raised by steps up that did not last
+     */
+    public synchronized int getUpgradePenalty() {
+        return penalty;
+    }
+
+    /**
+     * The most recent level changes, oldest first
+     */
+    public synchronized List<Decision> getDecisions() {
+        return new ArrayList<>(decisions);
+    }
+
+    public synchronized List<Probe> getProbes() {
+        return new ArrayList<>(probes);
+    }
+
+    private double slowest() {
+        double max = 0;
+        for (Probe probe : probes) {
+            max = Math.max(max, probe.smoothed);
+        }
+        return max;
+    }
+
+    private synchronized void record(Probe probe, long nanos) {
+        probe.smoothed = probe.smoothed == 0 ? nanos : probe.smoothed + (nanos - probe.smoothed) * SMOOTHING;
+        if (probe != probes.get(probes.size() - 1)) {
+            return;
+        }
+        ++frames;
+
+        final double latency = slowest();
+        final double limit = period * target;
+        if (latency > limit) {
+            under = 0;
+            if (++over >= degradeFrames && level < levels.size() - 1) {
+                // A step up that is taken back this soon makes the next one wait longer
+                if (lastUpgrade >= 0 && frames - lastUpgrade < (long) upgradeFrames * penalty) {
+                    penalty = Math.min(MAX_PENALTY, penalty * 2);
+                }
+                ++degrades;
+                lastDegrade = frames;
+                change(level + 1, latency);
+            }
+        } else if (latency < limit * upgradeMargin) {
+            over = 0;
+            if (++under >= upgradeFrames * penalty && level > 0) {
+                ++upgrades;
+                lastUpgrade = frames;
+                change(level - 1, latency);
+            }
+        } else {
+            over = 0;
+            under = 0;
+        }
+
+        // A step up that held for a long time resets the penalty, one that was taken back does not
+        if (penalty > 1 && lastUpgrade > lastDegrade && frames - lastUpgrade > (long) upgradeFrames * MAX_PENALTY) {
+            penalty = 1;
+        }
+    }
+
+    private void change(int next, double latency) {
+        decisions.addLast(new Decision(frames, level, next, latency / 1e6));
+        if (decisions.size() > HISTORY) {
+            decisions.removeFirst();
+        }
+        level = next;
+        over = 0;
+        under = 0;
+        // Measurements so far describe the old level
+        for (Probe probe : probes) {
+            probe.smoothed = 0;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.moe.librealsense.Calibration;
+import org.moe.librealsense.Extrinsics;
+import org.moe.librealsense.Intrinsics;
+import org.moe.librealsense.RS;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Synthesizer of RS.stream.rectified_color: the color image undistorted and rotated to the orientation of the depth
+ * stream, keeping the color resolution and translation. Rectification does not depend on depth, so every rectified
+ * pixel gathers the nearest color pixel through a table built once per calibration. Packed RGB formats keep their
+ * format, yuyv color is converted to rgb8 first. Compute calls are serialized because the table is shared across frame
+ * sets.
+ */
+public class RectifiedColorSynthesizer implements Synthesizer {
+    private final PackedColor packed = new PackedColor();
+
+    private Calibration calibration;
+    private int color_format;
+    private int out_format;
+    private Intrinsics rect_intrin;
+    private int gather[]; /* byte offset of the color pixel, or -1 outside of the color image */
+
+    @Override
+    public synchronized void compute(SyntheticStreams streams, FrameSet frames, FrameSet.Frame out) {
+        final FrameSet.Frame color = frames.get(RS.stream.color);
+        if (!color.isPresent()) {
+            throw new IllegalStateException("Frame set has no color frame");
+        }
+        if (calibration != frames.getCalibration() || color_format != color.getFormat()) {
+            calibration = frames.getCalibration();
+            color_format = color.getFormat();
+            out_format = PackedColor.formatOf(color_format);
+            rect_intrin = rectifiedIntrinsics(calibration);
+            gather = gatherTable(rect_intrin, rectifiedToColor(calibration), calibration.getIntrinsics(RS.stream.color),
+                    FrameSet.frameSize(out_format, 1, 1));
+        }
+
+        final int channels = FrameSet.frameSize(out_format, 1, 1);
+        final ByteBuffer pixels = packed.pixels(color);
+        final ByteBuffer rectified = out.prepare(rect_intrin.width, rect_intrin.height, out_format,
+                color.getTimestamp());
+        for (int i = 0, o = 0; i < gather.length; ++i, o += channels) {
+            final int g = gather[i];
+            if (g < 0) {
+                for (int c = 0; c < channels; ++c) rectified.put(o + c, (byte) 0);
+            } else {
+                for (int c = 0; c < channels; ++c) rectified.put(o + c, pixels.get(g + c));
+            }
+        }
+    }
+
+    // The device reports them when color is enabled, otherwise they are the color intrinsics without distortion
+    private static Intrinsics rectifiedIntrinsics(Calibration calibration) {
+        final Intrinsics rect_intrin = calibration.getIntrinsics(RS.stream.rectified_color);
+        if (rect_intrin != null) {
+            return rect_intrin;
+        }
+        final Intrinsics color_intrin = calibration.getIntrinsics(RS.stream.color);
+        return new Intrinsics(color_intrin.width, color_intrin.height, color_intrin.ppx, color_intrin.ppy,
+                color_intrin.fx, color_intrin.fy, RS.distortion.none.value, new float[5]);
+    }
+
+    // The rectified viewpoint shares the color position and the depth orientation, only the rotation remains
+    private static Extrinsics rectifiedToColor(Calibration calibration) {
+        final Extrinsics depth_to_color = calibration.getExtrinsics(RS.stream.depth, RS.stream.color);
+        if (depth_to_color == null) {
+            throw new IllegalStateException("Rectification needs the depth to color extrinsics");
+        }
+        return new Extrinsics(depth_to_color.rotation, new float[3]);
+    }
+
+    private static int[] gatherTable(Intrinsics rect_intrin, Extrinsics rect_to_color, Intrinsics color_intrin,
+                                     int channels) {
+        final int table[] = new int[rect_intrin.width * rect_intrin.height];
+        final float rect_pixel[] = new float[2];
+        final float rect_point[] = new float[3];
+        final float color_point[] = new float[3];
+        final float color_pixel[] = new float[2];
+        for (int y = 0, i = 0; y < rect_intrin.height; ++y) {
+            for (int x = 0; x < rect_intrin.width; ++x, ++i) {
+                rect_pixel[0] = x;
+                rect_pixel[1] = y;
+                rect_intrin.deproject(rect_point, rect_pixel, 1);
+                rect_to_color.transform(color_point, rect_point);
+                color_intrin.project(color_pixel, color_point);
+                final int cx = Math.round(color_pixel[0]), cy = Math.round(color_pixel[1]);
+                table[i] = cx < 0 || cy < 0 || cx >= color_intrin.width || cy >= color_intrin.height
+                        ? -1 : (cy * color_intrin.width + cx) * channels;
+            }
+        }
+        return table;
+    }
+}
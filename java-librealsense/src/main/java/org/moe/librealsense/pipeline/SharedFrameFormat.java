@@ -0,0 +1,92 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.moe.librealsense.ExtrinsicsView;
+import org.moe.librealsense.IntrinsicsView;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Layout of a shared frame file, all values in native byte order.
+ * <p>
+ * The header holds the ring geometry, the stream modes, and the calibration as rs_intrinsics / rs_extrinsics structs,
+ * and is padded to a page. It is followed by the slots, each holding a stamp, the frame set sequence, per-stream
+ * presence and timestamps, and the frame data of every stream at a fixed offset. The stamp of a slot is 2 * seq + 1
+ * while ring sequence seq is being written into it and 2 * seq + 2 once it is complete.
+ */
+final class SharedFrameFormat {
+    private SharedFrameFormat() {
+    }
+
+    static final int MAGIC = 0x52534652; /* 'RSFR', read back differently on a machine of the other byte order */
+    static final int VERSION = 1;
+
+    // Header
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_VERSION = 4;
+    static final int HEADER_SLOT_COUNT = 8;
+    static final int HEADER_SLOT_SIZE = 12;
+    static final int HEADER_STREAM_COUNT = 16;
+    static final int HEADER_DEPTH_SCALE = 20;
+    static final int HEADER_PUBLISHED = 24; /* long, last complete ring sequence or -1 */
+    static final int HEADER_CLOSED = 32;    /* int, non-zero once the writer is closed */
+    static final int HEADER_SIZE = 36;      /* int, offset of the first slot */
+    static final int STREAMS = 64;          /* per stream: width, height, format, data offset in the slot or -1 */
+    static final int STREAM_RECORD = 16;
+    static final int CALIBRATION_RECORD = 8 + Math.max(IntrinsicsView.SIZE, ExtrinsicsView.SIZE); /* int present, pad, struct */
+
+    // Slot
+    static final int SLOT_STAMP = 0;
+    static final int SLOT_SEQUENCE = 8;
+    static final int SLOT_FRAMES = 16;      /* per stream: int present, int timestamp */
+    static final int FRAME_RECORD = 8;
+
+    static final int ALIGNMENT = 64;
+    static final int PAGE = 4096;
+
+    private static final AtomicInteger FENCE = new AtomicInteger();
+
+    static int streamRecord(int stream) {
+        return STREAMS + stream * STREAM_RECORD;
+    }
+
+    static int intrinsicsRecord(int streams, int stream) {
+        return STREAMS + streams * STREAM_RECORD + stream * CALIBRATION_RECORD;
+    }
+
+    static int extrinsicsRecord(int streams, int from, int to) {
+        return intrinsicsRecord(streams, streams) + (from * streams + to) * CALIBRATION_RECORD;
+    }
+
+    static int headerSize(int streams) {
+        return align(extrinsicsRecord(streams, streams, 0), PAGE);
+    }
+
+    static int align(int value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+
+    /**
+     * Order the plain accesses to the mapped file before and after this call. The mapping is not a Java variable, this
+     * relies on a compare-and-set being compiled to a full hardware fence.
+     */
+    static void fence() {
+        FENCE.compareAndSet(0, 0);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.moe.librealsense.Calibration;
+import org.moe.librealsense.ExtrinsicsView;
+import org.moe.librealsense.IntrinsicsView;
+import org.moe.librealsense.RS;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.moe.librealsense.pipeline.SharedFrameFormat.*;
+
+/**
+ * Maps a frame ring written by {@link SharedFrameWriter}, possibly in another process, and exposes its frames without
+ * copying them. Readers never block the writer, so a slot is checked before its frames are read, as it may not hold
+ * that frame set yet, and again afterwards, as it may have been overwritten meanwhile:
+ * <pre>
+ * long seq = reader.await(last);
+ * if (reader.isValid(seq)) {
+ *     ByteBuffer depth = reader.getData(seq, RS.stream.depth);
+ *     process(depth);
+ *     if (reader.isValid(seq)) ...  // otherwise the slot was overwritten while it was read
+ * }
+ * </pre>
+ * A reader is meant for one thread; the buffers it hands out are read-only views of the mapping.
+ */
+public class SharedFrameReader implements AutoCloseable {
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int slotCount;
+    private final int slotSize;
+    private final int headerSize;
+    private final int widths[] = new int[FrameSet.STREAM_COUNT];
+    private final int heights[] = new int[FrameSet.STREAM_COUNT];
+    private final int formats[] = new int[FrameSet.STREAM_COUNT];
+    private final ByteBuffer views[][];
+    private final Calibration calibration;
+
+    public SharedFrameReader(Path file) throws IOException {
+        if (file == null) {
+            throw new NullPointerException();
+        }
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final long length = channel.size();
+            if (length < PAGE) {
+                throw new IOException("Shared frame file " + file + " is not initialized");
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            map.order(ByteOrder.nativeOrder());
+            if (map.getInt(HEADER_MAGIC) != MAGIC) {
+                throw new IOException(file + " is not an initialized shared frame file of this byte order");
+            }
+            fence();
+            if (map.getInt(HEADER_VERSION) != VERSION) {
+                throw new IOException("Unsupported shared frame file version " + map.getInt(HEADER_VERSION));
+            }
+            if (map.getInt(HEADER_STREAM_COUNT) != FrameSet.STREAM_COUNT) {
+                throw new IOException("Shared frame file has " + map.getInt(HEADER_STREAM_COUNT) + " streams, expected "
+                        + FrameSet.STREAM_COUNT);
+            }
+            slotCount = map.getInt(HEADER_SLOT_COUNT);
+            slotSize = map.getInt(HEADER_SLOT_SIZE);
+            headerSize = map.getInt(HEADER_SIZE);
+            if (headerSize + (long) slotSize * slotCount > length) {
+                throw new IOException("Shared frame file " + file + " is truncated");
+            }
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+
+        final int streams = FrameSet.STREAM_COUNT;
+        final int offsets[] = new int[streams];
+        for (int s = 0; s < streams; ++s) {
+            final int record = streamRecord(s);
+            widths[s] = map.getInt(record);
+            heights[s] = map.getInt(record + 4);
+            formats[s] = map.getInt(record + 8);
+            offsets[s] = map.getInt(record + 12);
+        }
+        views = new ByteBuffer[slotCount][streams];
+        for (int slot = 0; slot < slotCount; ++slot) {
+            for (int s = 0; s < streams; ++s) {
+                if (offsets[s] < 0) continue;
+                final int start = headerSize + slot * slotSize + offsets[s];
+                final ByteBuffer view = map.duplicate();
+                view.position(start).limit(start + FrameSet.frameSize(formats[s], widths[s], heights[s]));
+                views[slot][s] = view.slice().order(ByteOrder.nativeOrder());
+            }
+        }
+        calibration = readCalibration();
+    }
+
+    private Calibration readCalibration() {
+        final int streams = FrameSet.STREAM_COUNT;
+        final Calibration calibration = new Calibration(map.getFloat(HEADER_DEPTH_SCALE));
+        final IntrinsicsView intrinsics = new IntrinsicsView(map, intrinsicsRecord(streams, 0) + 8);
+        final ExtrinsicsView extrinsics = new ExtrinsicsView(map, extrinsicsRecord(streams, 0, 0) + 8);
+        for (RS.stream from : RS.stream.values()) {
+            final int record = intrinsicsRecord(streams, from.value);
+            if (map.getInt(record) != 0) {
+                calibration.setIntrinsics(from, intrinsics.wrap(map, record + 8).toIntrinsics());
+            }
+        }
+        // Both directions are stored, setting one derives the other, so only the lower triangle is read
+        for (RS.stream from : RS.stream.values()) {
+            for (RS.stream to : RS.stream.values()) {
+                if (to.value >= from.value) break;
+                final int record = extrinsicsRecord(streams, from.value, to.value);
+                if (map.getInt(record) != 0) {
+                    calibration.setExtrinsics(from, to, extrinsics.wrap(map, record + 8).toExtrinsics());
+                }
+            }
+        }
+        return calibration;
+    }
+
+    public Calibration getCalibration() {
+        return calibration;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * True if the writer publishes this stream
+     */
+    public boolean hasStream(RS.stream stream) {
+        return views[0][stream.value] != null;
+    }
+
+    public int getWidth(RS.stream stream) {
+        return widths[stream.value];
+    }
+
+    public int getHeight(RS.stream stream) {
+        return heights[stream.value];
+    }
+
+    /**
+     * Pixel format of a stream, as an RS.format value
+     */
+    public int getFormat(RS.stream stream) {
+        return formats[stream.value];
+    }
+
+    /**
+     * Ring sequence of the newest complete frame set, or -1 if none was published yet
+     */
+    public long latest() {
+        return map.getLong(HEADER_PUBLISHED);
+    }
+
+    /**
+     * True once the writer has closed the ring, no further frame sets will be published
+     */
+    public boolean isClosed() {
+        return map.getInt(HEADER_CLOSED) != 0;
+    }
+
+    /**
+     * Wait until a frame set newer than the given ring sequence is published and return the newest sequence. Returns
+     * -1 if the writer closes the ring first.
+     */
+    public long await(long after) throws InterruptedException {
+        int spins = 0;
+        while (true) {
+            final long seq = latest();
+            if (seq > after) return seq;
+            if (isClosed()) return -1;
+            spins = Backoff.idle(spins);
+        }
+    }
+
+    private int base(long seq) {
+        return headerSize + (int) (seq % slotCount) * slotSize;
+    }
+
+    /**
+     * True if the slot holds the complete frame set of this ring sequence. Call it before reading the frames, which
+     * are not there yet while it is false, and after, to know whether what was read is consistent.
+     */
+    public boolean isValid(long seq) {
+        // Fenced on both sides, so that neither earlier nor later reads of the slot move across the stamp
+        fence();
+        final boolean valid = map.getLong(base(seq) + SLOT_STAMP) == 2 * seq + 2;
+        fence();
+        return valid;
+    }
+
+    /**
+     * Capture sequence of the frame set, as given by the source which produced it
+     */
+    public long getFrameSequence(long seq) {
+        return map.getLong(base(seq) + SLOT_SEQUENCE);
+    }
+
+    public boolean has(long seq, RS.stream stream) {
+        return map.getInt(base(seq) + SLOT_FRAMES + stream.value * FRAME_RECORD) != 0;
+    }
+
+    /**
+     * Capture time of a frame in milliseconds since the device was started
+     */
+    public int getTimestamp(long seq, RS.stream stream) {
+        return map.getInt(base(seq) + SLOT_FRAMES + stream.value * FRAME_RECORD + 4);
+    }
+
+    /**
+     * Frame contents in the mapping, read-only and in native byte order, or null if the stream is not published. The
+     * same buffer is returned for every frame set stored in that slot.
+     */
+    public ByteBuffer getData(long seq, RS.stream stream) {
+        final ByteBuffer view = views[(int) (seq % slotCount)][stream.value];
+        if (view != null) {
+            view.clear();
+        }
+        return view;
+    }
+
+    /**
+     * Copy a frame set out of the ring, returns false if it is not published yet or was overwritten meanwhile, and the
+     * copy is inconsistent
+     */
+    public boolean read(long seq, FrameSet frames) {
+        if (!isValid(seq)) {
+            return false;
+        }
+        frames.reset(getFrameSequence(seq), calibration);
+        for (RS.stream stream : RS.stream.values()) {
+            final int s = stream.value;
+            if (views[0][s] == null || !has(seq, stream)) continue;
+            final ByteBuffer data = frames.get(stream).prepare(widths[s], heights[s], formats[s], getTimestamp(seq, stream));
+            data.put(getData(seq, stream));
+            data.flip();
+        }
+        return isValid(seq);
+    }
+
+    /**
+     * Close the file. The mapping itself is released by the garbage collector.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
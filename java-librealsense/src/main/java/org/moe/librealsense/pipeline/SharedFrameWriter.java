@@ -0,0 +1,234 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.moe.librealsense.Calibration;
+import org.moe.librealsense.Extrinsics;
+import org.moe.librealsense.ExtrinsicsView;
+import org.moe.librealsense.Intrinsics;
+import org.moe.librealsense.IntrinsicsView;
+import org.moe.librealsense.RS;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.moe.librealsense.pipeline.SharedFrameFormat.*;
+
+/**
+ * Publishes frame sets into a memory-mapped file ring, so that other processes on the host can read the frames of a
+ * device only one process can open. Readers map the same file with {@link SharedFrameReader} and never lock or signal
+ * the writer; a slow reader just finds its slot overwritten.
+ * <p>
+ * Stream modes and calibration are taken from the first frame set and written once into the file header, later frame
+ * sets must have the same streams and modes. Frames of a stream missing from a set are marked absent in its slot.
+ * <pre>
+ * SharedFrameWriter writer = new SharedFrameWriter(path, 8, source.next());
+ * Pipeline pipeline = Pipeline.from("acquire", source).to("share", writer, 2, Backpressure.DROP_OLDEST);
+ * </pre>
+ */
+public class SharedFrameWriter implements Sink<FrameSet>, AutoCloseable {
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int slotCount;
+    private final int slotSize;
+    private final int headerSize;
+    private final int widths[] = new int[FrameSet.STREAM_COUNT];
+    private final int heights[] = new int[FrameSet.STREAM_COUNT];
+    private final int formats[] = new int[FrameSet.STREAM_COUNT];
+    private final ByteBuffer targets[][];
+    private long next;
+
+    /**
+     * Create or replace the file
+     *
+     * @param slotCount  number of frame sets kept in the ring
+     * @param first      frame set describing the streams, it is not published
+     */
+    public SharedFrameWriter(Path file, int slotCount, FrameSet first) throws IOException {
+        if (file == null || first == null) {
+            throw new NullPointerException();
+        }
+        if (slotCount <= 0) {
+            throw new IllegalArgumentException("Invalid slot count " + slotCount);
+        }
+        final int streams = FrameSet.STREAM_COUNT;
+        this.slotCount = slotCount;
+        this.headerSize = headerSize(streams);
+
+        // Every present stream gets a fixed, aligned region in each slot
+        final int offsets[] = new int[streams];
+        int size = align(SLOT_FRAMES + streams * FRAME_RECORD, ALIGNMENT);
+        for (RS.stream stream : RS.stream.values()) {
+            final FrameSet.Frame frame = first.get(stream);
+            final int s = stream.value;
+            if (!frame.isPresent()) {
+                offsets[s] = -1;
+                continue;
+            }
+            widths[s] = frame.getWidth();
+            heights[s] = frame.getHeight();
+            formats[s] = frame.getFormat();
+            offsets[s] = size;
+            size = align(size + FrameSet.frameSize(formats[s], widths[s], heights[s]), ALIGNMENT);
+        }
+        this.slotSize = align(size, PAGE);
+        final long length = headerSize + (long) slotSize * slotCount;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Ring of " + length + " bytes is too large to map");
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        map.order(ByteOrder.nativeOrder());
+
+        targets = new ByteBuffer[slotCount][streams];
+        for (int slot = 0; slot < slotCount; ++slot) {
+            for (int s = 0; s < streams; ++s) {
+                if (offsets[s] < 0) continue;
+                final int start = headerSize + slot * slotSize + offsets[s];
+                final ByteBuffer target = map.duplicate();
+                target.position(start).limit(start + FrameSet.frameSize(formats[s], widths[s], heights[s]));
+                targets[slot][s] = target.slice();
+            }
+        }
+        writeHeader(first.getCalibration(), offsets);
+    }
+
+    private void writeHeader(Calibration calibration, int offsets[]) {
+        final int streams = FrameSet.STREAM_COUNT;
+        map.putInt(HEADER_VERSION, VERSION);
+        map.putInt(HEADER_SLOT_COUNT, slotCount);
+        map.putInt(HEADER_SLOT_SIZE, slotSize);
+        map.putInt(HEADER_STREAM_COUNT, streams);
+        map.putFloat(HEADER_DEPTH_SCALE, calibration == null ? 0 : calibration.getDepthScale());
+        map.putLong(HEADER_PUBLISHED, -1);
+        map.putInt(HEADER_CLOSED, 0);
+        map.putInt(HEADER_SIZE, headerSize);
+        for (int s = 0; s < streams; ++s) {
+            final int record = streamRecord(s);
+            map.putInt(record, widths[s]);
+            map.putInt(record + 4, heights[s]);
+            map.putInt(record + 8, formats[s]);
+            map.putInt(record + 12, offsets[s]);
+        }
+
+        if (calibration != null) {
+            final IntrinsicsView intrinsics = new IntrinsicsView(map, intrinsicsRecord(streams, 0) + 8);
+            final ExtrinsicsView extrinsics = new ExtrinsicsView(map, extrinsicsRecord(streams, 0, 0) + 8);
+            for (RS.stream from : RS.stream.values()) {
+                final Intrinsics intrin = calibration.getIntrinsics(from);
+                if (intrin != null) {
+                    final int record = intrinsicsRecord(streams, from.value);
+                    map.putInt(record, 1);
+                    intrinsics.wrap(map, record + 8).set(intrin);
+                }
+                for (RS.stream to : RS.stream.values()) {
+                    final Extrinsics extrin = calibration.getExtrinsics(from, to);
+                    if (extrin == null) continue;
+                    final int record = extrinsicsRecord(streams, from.value, to.value);
+                    map.putInt(record, 1);
+                    extrinsics.wrap(map, record + 8).set(extrin);
+                }
+            }
+        }
+
+        // Readers check the magic number first, so it goes last
+        fence();
+        map.putInt(HEADER_MAGIC, MAGIC);
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Number of frame sets published so far
+     */
+    public long getPublished() {
+        return next;
+    }
+
+    /**
+     * Copy a frame set into the next slot of the ring
+     */
+    @Override
+    public void accept(FrameSet frames) {
+        final long seq = next;
+        final int slot = (int) (seq % slotCount);
+        final int base = headerSize + slot * slotSize;
+
+        // Check before touching the slot, a rejected frame set must leave the previous contents readable
+        for (RS.stream stream : RS.stream.values()) {
+            final int s = stream.value;
+            final FrameSet.Frame frame = frames.get(stream);
+            if (!frame.isPresent() || targets[slot][s] == null) continue;
+            if (frame.getWidth() != widths[s] || frame.getHeight() != heights[s] || frame.getFormat() != formats[s]) {
+                throw new IllegalArgumentException("Stream " + stream + " changed mode to " + frame.getWidth() + "x"
+                        + frame.getHeight() + " format " + frame.getFormat());
+            }
+        }
+
+        // Odd stamp first, readers of the previous contents of the slot see it as overwritten
+        map.putLong(base + SLOT_STAMP, 2 * seq + 1);
+        fence();
+
+        map.putLong(base + SLOT_SEQUENCE, frames.getSequence());
+        for (RS.stream stream : RS.stream.values()) {
+            final int s = stream.value;
+            final int record = base + SLOT_FRAMES + s * FRAME_RECORD;
+            final FrameSet.Frame frame = frames.get(stream);
+            final ByteBuffer target = targets[slot][s];
+            if (!frame.isPresent() || target == null) {
+                map.putInt(record, 0);
+                continue;
+            }
+            map.putInt(record, 1);
+            map.putInt(record + 4, frame.getTimestamp());
+            target.clear();
+            target.put(frame.getData().duplicate());
+        }
+
+        // Even stamp only once the data is in place
+        fence();
+        map.putLong(base + SLOT_STAMP, 2 * seq + 2);
+        map.putLong(HEADER_PUBLISHED, seq);
+        next = seq + 1;
+    }
+
+    /**
+     * Mark the ring as closed for the readers and close the file. The mapping itself is released by the garbage
+     * collector.
+     */
+    @Override
+    public void close() throws IOException {
+        fence();
+        map.putInt(HEADER_CLOSED, 1);
+        channel.close();
+    }
+}
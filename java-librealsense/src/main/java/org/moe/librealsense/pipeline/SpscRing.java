@@ -0,0 +1,132 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.moe.librealsense.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer for exactly one producer thread and one consumer thread.
+ * <p>
+ * The consumer claims elements with a CAS on the head sequence, which also lets the producer evict the oldest element
+ * when the ring is full instead of waiting. Whichever side wins the CAS clears the slot, so the ring does not keep
+ * consumed elements reachable, and the producer only reuses a slot once it is cleared. Null elements are not allowed.
+ */
+public class SpscRing<T> {
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity  maximum number of queued elements, rounded up to a power of two
+     */
+    public SpscRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * Add an element if there is room, returns false if the ring is full
+     */
+    public boolean offer(T value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        final long t = tail.get();
+        // The consumer clears the slot just after claiming it, until then the ring is still full
+        if (t - head.get() > mask || slots.get((int) t & mask) != null) {
+            return false;
+        }
+        slots.lazySet((int) t & mask, value);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Add an element, waiting for the consumer while the ring is full
+     */
+    public void put(T value) throws InterruptedException {
+        int spins = 0;
+        while (!offer(value)) {
+            spins = Backoff.idle(spins);
+        }
+    }
+
+    /**
+     * Add an element, discarding the oldest queued elements while the ring is full. Returns the number discarded.
+     * Waits only while the consumer has claimed the oldest element but not yet cleared its slot.
+     */
+    public int putDropOldest(T value) throws InterruptedException {
+        int dropped = 0;
+        int spins = 0;
+        while (!offer(value)) {
+            final long h = head.get();
+            if (tail.get() - h > mask && head.compareAndSet(h, h + 1)) {
+                slots.lazySet((int) h & mask, null);
+                ++dropped;
+            } else {
+                spins = Backoff.idle(spins);
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Remove the oldest element, returns null if the ring is empty
+     */
+    public T poll() {
+        while (true) {
+            final long h = head.get();
+            if (h >= tail.get()) {
+                return null;
+            }
+            final T value = slots.get((int) h & mask);
+            if (head.compareAndSet(h, h + 1)) {
+                slots.lazySet((int) h & mask, null);
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Remove the oldest element, waiting for the producer while the ring is empty
+     */
+    public T take() throws InterruptedException {
+        int spins = 0;
+        T value;
+        while ((value = poll()) == null) {
+            spins = Backoff.idle(spins);
+        }
+        return value;
+    }
+}
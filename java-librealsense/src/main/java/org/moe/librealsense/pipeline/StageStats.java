@@ -0,0 +1,92 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+/**
+ * Timing counters of one pipeline stage, readable from any thread. Each counter has a single writer: the stage thread,
+ * except for the drop count which the thread of the upstream stage updates when it evicts from this stage's input.
+ */
+public class StageStats {
+    private final String name;
+
+    private volatile long processed;
+    private volatile long dropped;
+    private volatile long busyNanos;
+    private volatile long lastNanos;
+    private volatile long maxNanos;
+
+    StageStats(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Number of elements this stage has processed
+     */
+    public long getProcessed() {
+        return processed;
+    }
+
+    /**
+     * Number of elements discarded from this stage's input ring
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Total time spent inside the stage, excluding waits on its rings
+     */
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public double getMeanMillis() {
+        final long n = processed;
+        return n == 0 ? 0 : busyNanos / 1e6 / n;
+    }
+
+    void record(long nanos) {
+        processed = processed + 1;
+        busyNanos = busyNanos + nanos;
+        lastNanos = nanos;
+        if (nanos > maxNanos) maxNanos = nanos;
+    }
+
+    // Called from the upstream thread, never concurrently with itself
+    void drop(int count) {
+        dropped = dropped + count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d processed, %d dropped, %.3f ms mean, %.3f ms max",
+                name, processed, dropped, getMeanMillis(), maxNanos / 1e6);
+    }
+}
@@ -0,0 +1,29 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+/**
+ * Computes one synthetic stream (see RS.stream.points and following) from the frames of a frame set
+ */
+public interface Synthesizer {
+    /**
+     * Fill the output frame, use {@link FrameSet.Frame#prepare} to size it. Other synthetic streams this one depends
+     * on can be obtained from the streams argument.
+     */
+    void compute(SyntheticStreams streams, FrameSet frames, FrameSet.Frame out) throws Exception;
+}
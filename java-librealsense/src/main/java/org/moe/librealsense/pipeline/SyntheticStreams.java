@@ -0,0 +1,104 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.moe.librealsense.RS;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Java-side synthetic streams which are computed only when a consumer asks for them. The first request for a stream of
+ * a frame set schedules its {@link Synthesizer} on the worker executor, later requests for the same frame set share the
+ * result. Frame sets nobody asks about cost nothing, and the capture thread never does the work.
+ */
+public class SyntheticStreams {
+    private final Synthesizer synthesizers[] = new Synthesizer[FrameSet.STREAM_COUNT];
+    private final Executor executor;
+
+    /**
+     * Synthesizers run on the common fork-join pool
+     */
+    public SyntheticStreams() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public SyntheticStreams(Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException();
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Set how a synthetic stream is computed
+     */
+    public SyntheticStreams register(RS.stream stream, Synthesizer synthesizer) {
+        if (stream.value < RS.stream.points.value) {
+            throw new IllegalArgumentException(stream + " is a native stream");
+        }
+        synthesizers[stream.value] = synthesizer;
+        return this;
+    }
+
+    public boolean isRegistered(RS.stream stream) {
+        return synthesizers[stream.value] != null;
+    }
+
+    /**
+     * Request a stream of a frame set. Native streams complete immediately, synthetic streams are computed at most
+     * once per frame set.
+     */
+    public CompletableFuture<FrameSet.Frame> request(FrameSet frames, RS.stream stream) {
+        if (stream.value < RS.stream.points.value) {
+            return CompletableFuture.completedFuture(frames.get(stream));
+        }
+        final CompletableFuture<FrameSet.Frame> existing = frames.getDerived(stream);
+        if (existing != null) {
+            return existing;
+        }
+        final Synthesizer synthesizer = synthesizers[stream.value];
+        if (synthesizer == null) {
+            throw new IllegalArgumentException("No synthesizer registered for " + stream);
+        }
+
+        final CompletableFuture<FrameSet.Frame> future = new CompletableFuture<>();
+        if (!frames.setDerived(stream, future)) {
+            // Another consumer got there first
+            return frames.getDerived(stream);
+        }
+        executor.execute(() -> {
+            try {
+                final FrameSet.Frame out = frames.get(stream);
+                synthesizer.compute(this, frames, out);
+                future.complete(out);
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Request a stream of a frame set and wait for it
+     */
+    public FrameSet.Frame get(FrameSet frames, RS.stream stream) {
+        return request(frames, stream).join();
+    }
+}
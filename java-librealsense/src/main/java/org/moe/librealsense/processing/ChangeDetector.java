@@ -0,0 +1,223 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.processing;
+
+import java.util.Arrays;
+
+/**
+ * Detects changes in a depth scene against a per-pixel background model, e.g. people entering a zone in front of a
+ * static camera. Every frame updates the model, a change mask and an activity score per tile (the fraction of valid
+ * pixels of the tile that changed). All state lives in primitive arrays allocated up front, so updates do not
+ * allocate.
+ * <p>
+ * With a decimation factor k only every k-th pixel of every k-th row is considered, and mask and model are
+ * (width / k) x (height / k).
+ */
+public class ChangeDetector {
+    public enum Model {
+        /**
+         * Exponential moving average, adapts quickly
+         */
+        EXPONENTIAL,
+        /**
+         * Approximate running median moving a fixed step towards every sample, robust against outliers
+         */
+        MEDIAN,
+    }
+
+    // Exponential model values carry this many fractional bits
+    private static final int FRACTION = 4;
+
+    private final int width;
+    private final int decimation;
+    private final int mask_width;
+    private final int mask_height;
+    private final int tile_size;
+    private final int tiles_x;
+    private final int tiles_y;
+    private final Model model;
+
+    private int min_delta = 50;
+    private float relative_delta = 0.05f;
+    private int learning_shift = 5;
+    private int median_step = 4;
+
+    private final int background[];
+    private final byte mask[];
+    private final int tile_changed[];
+    private final int tile_valid[];
+    private final float tile_scores[];
+
+    /**
+     * @param decimation  sampling step in pixels, 1 uses every pixel
+     * @param tile_size   tile edge length in mask pixels
+     */
+    public ChangeDetector(int width, int height, int decimation, int tile_size, Model model) {
+        if (width <= 0 || height <= 0 || decimation <= 0 || tile_size <= 0 || model == null) {
+            throw new IllegalArgumentException("Invalid detector parameters");
+        }
+        this.width = width;
+        this.decimation = decimation;
+        this.mask_width = width / decimation;
+        this.mask_height = height / decimation;
+        this.tile_size = tile_size;
+        this.tiles_x = (mask_width + tile_size - 1) / tile_size;
+        this.tiles_y = (mask_height + tile_size - 1) / tile_size;
+        this.model = model;
+
+        background = new int[mask_width * mask_height];
+        mask = new byte[mask_width * mask_height];
+        tile_changed = new int[tiles_x * tiles_y];
+        tile_valid = new int[tiles_x * tiles_y];
+        tile_scores = new float[tiles_x * tiles_y];
+    }
+
+    /**
+     * A pixel changed if it differs from the background by more than max(min_delta, relative_delta * background)
+     *
+     * @param min_delta       absolute threshold in depth units
+     * @param relative_delta  threshold as a fraction of the background depth, as depth noise grows with distance
+     */
+    public void setThreshold(int min_delta, float relative_delta) {
+        this.min_delta = min_delta;
+        this.relative_delta = relative_delta;
+    }
+
+    /**
+     * The exponential model moves by 1 / 2^shift of the difference per frame, default 5
+     */
+    public void setLearningShift(int shift) {
+        this.learning_shift = shift;
+    }
+
+    /**
+     * The median model moves by this many depth units per frame, default 4
+     */
+    public void setMedianStep(int step) {
+        this.median_step = step;
+    }
+
+    public int getMaskWidth() {
+        return mask_width;
+    }
+
+    public int getMaskHeight() {
+        return mask_height;
+    }
+
+    public int getTilesX() {
+        return tiles_x;
+    }
+
+    public int getTilesY() {
+        return tiles_y;
+    }
+
+    /**
+     * 1 where the last frame changed, mask width x mask height. Overwritten by the next update.
+     */
+    public byte[] getMask() {
+        return mask;
+    }
+
+    /**
+     * Fraction of valid pixels which changed per tile, tiles x by tiles y. Overwritten by the next update.
+     */
+    public float[] getTileScores() {
+        return tile_scores;
+    }
+
+    /**
+     * Forget the background, the next frame becomes the new background
+     */
+    public void reset() {
+        Arrays.fill(background, 0);
+    }
+
+    /**
+     * Process a z16 frame on the calling thread
+     */
+    public void update(char depth[]) {
+        process(depth, 0, tiles_y);
+    }
+
+    /**
+     * Process a z16 frame with stripes of tile rows in parallel
+     */
+    public void updateParallel(char depth[], int stripes) {
+        Stripes.run(tiles_y, stripes, (s, t0, t1) -> process(depth, t0, t1));
+    }
+
+    // Processes the mask rows of tile rows [t0, t1)
+    private void process(char depth[], int t0, int t1) {
+        final int y_end = Math.min(mask_height, t1 * tile_size);
+        final int width = this.width;
+        final int step = this.decimation;
+        final int min_delta = this.min_delta;
+        final float relative_delta = this.relative_delta;
+        final boolean exponential = model == Model.EXPONENTIAL;
+
+        Arrays.fill(tile_changed, t0 * tiles_x, t1 * tiles_x, 0);
+        Arrays.fill(tile_valid, t0 * tiles_x, t1 * tiles_x, 0);
+
+        for (int my = t0 * tile_size; my < y_end; ++my) {
+            final int src_row = my * step * width;
+            final int tile_row = my / tile_size * tiles_x;
+            for (int mx = 0, m = my * mask_width; mx < mask_width; ++mx, ++m) {
+                final int d = depth[src_row + mx * step];
+                if (d == 0) {
+                    mask[m] = 0;
+                    continue;
+                }
+                final int tile = tile_row + mx / tile_size;
+                ++tile_valid[tile];
+
+                int bg = background[m];
+                if (bg == 0) {
+                    // First observation of this pixel
+                    background[m] = exponential ? d << FRACTION : d;
+                    mask[m] = 0;
+                    continue;
+                }
+
+                final int bg_depth = exponential ? bg >> FRACTION : bg;
+                final int diff = d - bg_depth;
+                final int threshold = Math.max(min_delta, (int) (relative_delta * bg_depth));
+                if (diff > threshold || -diff > threshold) {
+                    mask[m] = 1;
+                    ++tile_changed[tile];
+                } else {
+                    mask[m] = 0;
+                }
+
+                if (exponential) {
+                    bg += ((d << FRACTION) - bg) >> learning_shift;
+                } else if (diff > 0) {
+                    bg += Math.min(median_step, diff);
+                } else {
+                    bg -= Math.min(median_step, -diff);
+                }
+                background[m] = Math.max(bg, 1);
+            }
+        }
+
+        for (int t = t0 * tiles_x; t < t1 * tiles_x; ++t) {
+            tile_scores[t] = tile_valid[t] == 0 ? 0 : (float) tile_changed[t] / tile_valid[t];
+        }
+    }
+}
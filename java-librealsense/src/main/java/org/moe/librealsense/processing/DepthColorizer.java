@@ -0,0 +1,281 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.processing;
+
+import java.util.Arrays;
+
+/**
+ * Maps z16 depth frames to rgb8 images through a lookup table with one entry per possible depth value, so colorizing
+ * costs a single table lookup per pixel. The table is rebuilt only when the depth scale, range or colormap change.
+ * Invalid (zero) depth is black, depth outside the range gets the color of the nearest end.
+ * <p>
+ * In histogram-equalized mode the colors are spread evenly over the depths actually present in the scene. The histogram
+ * is sampled from every fourth pixel while colorizing and shapes the table of the following frame, so only the part of
+ * the table inside the range is rewritten per frame.
+ */
+public class DepthColorizer {
+    public enum Colormap {
+        /**
+         * Blue for near through green and yellow to red for far
+         */
+        JET,
+        /**
+         * White for near to dark gray for far
+         */
+        GRAYSCALE,
+    }
+
+    private static final int PALETTE = 1024;
+    private static final int DEPTH_VALUES = 65536;
+    private static final int SAMPLING = 4; /* histogram counts every n-th pixel, a power of two */
+
+    private final int lut[] = new int[DEPTH_VALUES];
+    private final int palette[] = new int[PALETTE];
+
+    private float depth_scale;
+    private float min_depth = 0.3f;
+    private float max_depth = 4.0f;
+    private Colormap colormap = Colormap.JET;
+    private boolean equalized;
+    private boolean dirty = true;
+
+    // Depth values [range_lo, range_hi] covered by the colormap, and their counts in the previous frame
+    private int range_lo;
+    private int range_hi;
+    private int histogram[];
+    private int stripe_histograms[][];
+    private boolean histogram_valid;
+    private int rebuilds;
+
+    /**
+     * @param depth_scale  meters per depth unit, as returned by get_depth_scale()
+     */
+    public DepthColorizer(float depth_scale) {
+        setDepthScale(depth_scale);
+    }
+
+    public float getDepthScale() {
+        return depth_scale;
+    }
+
+    public void setDepthScale(float depth_scale) {
+        if (!(depth_scale > 0)) {
+            throw new IllegalArgumentException("Invalid depth scale " + depth_scale);
+        }
+        if (depth_scale != this.depth_scale) {
+            this.depth_scale = depth_scale;
+            dirty = true;
+        }
+    }
+
+    public float getMinDepth() {
+        return min_depth;
+    }
+
+    public float getMaxDepth() {
+        return max_depth;
+    }
+
+    /**
+     * Depth range in meters spanned by the colormap, defaults to 0.3 to 4
+     */
+    public void setRange(float min_depth, float max_depth) {
+        if (!(min_depth >= 0 && max_depth > min_depth)) {
+            throw new IllegalArgumentException("Invalid depth range " + min_depth + " to " + max_depth);
+        }
+        if (min_depth != this.min_depth || max_depth != this.max_depth) {
+            this.min_depth = min_depth;
+            this.max_depth = max_depth;
+            dirty = true;
+        }
+    }
+
+    public Colormap getColormap() {
+        return colormap;
+    }
+
+    public void setColormap(Colormap colormap) {
+        if (colormap == null) {
+            throw new NullPointerException();
+        }
+        if (colormap != this.colormap) {
+            this.colormap = colormap;
+            dirty = true;
+        }
+    }
+
+    public boolean isEqualized() {
+        return equalized;
+    }
+
+    /**
+     * Spread the colors by the depth histogram instead of linearly, takes effect from the second frame on
+     */
+    public void setEqualized(boolean equalized) {
+        if (equalized != this.equalized) {
+            this.equalized = equalized;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Number of times the whole table was rebuilt, for checking that settings are not changed per frame
+     */
+    public int getRebuilds() {
+        return rebuilds;
+    }
+
+    /**
+     * Colorize a frame, rgb must hold 3 bytes per depth pixel
+     */
+    public void colorize(char depth[], byte rgb[]) {
+        colorizeParallel(depth, rgb, 1);
+    }
+
+    /**
+     * Colorize a frame with the pixels split into stripes processed in parallel
+     */
+    public void colorizeParallel(char depth[], byte rgb[], int stripes) {
+        final int count = depth.length;
+        if (rgb.length < count * 3) {
+            throw new IllegalArgumentException("Output of " + rgb.length + " bytes is too small for " + count
+                    + " pixels");
+        }
+        prepare();
+        if (!equalized) {
+            Stripes.run(count, stripes, (s, i0, i1) -> lookup(depth, rgb, i0, i1));
+            return;
+        }
+
+        final int n = Math.max(1, Math.min(stripes, count));
+        if (stripe_histograms == null || stripe_histograms.length < n) {
+            stripe_histograms = new int[n][histogram.length];
+        }
+        Stripes.run(count, n, (s, i0, i1) -> {
+            final int counts[] = stripe_histograms[s];
+            Arrays.fill(counts, 0);
+            lookupAndCount(depth, rgb, i0, i1, counts);
+        });
+        Arrays.fill(histogram, 0);
+        for (int s = 0; s < n; ++s) {
+            final int counts[] = stripe_histograms[s];
+            for (int i = 0; i < histogram.length; ++i) {
+                histogram[i] += counts[i];
+            }
+        }
+        histogram_valid = true;
+    }
+
+    /**
+     * Current color of a depth value, packed as 0xRRGGBB
+     */
+    public int getColor(int depth) {
+        prepare();
+        return lut[depth];
+    }
+
+    private void prepare() {
+        if (dirty) {
+            rebuild();
+            dirty = false;
+        } else if (equalized && histogram_valid) {
+            equalize();
+        }
+    }
+
+    private void rebuild() {
+        for (int i = 0; i < PALETTE; ++i) {
+            palette[i] = color(colormap, (float) i / (PALETTE - 1));
+        }
+
+        range_lo = Math.max(1, Math.min(DEPTH_VALUES - 1, (int) Math.ceil(min_depth / depth_scale)));
+        range_hi = Math.max(range_lo, Math.min(DEPTH_VALUES - 1, (int) Math.floor(max_depth / depth_scale)));
+        lut[0] = 0;
+        final float span = Math.max(1, range_hi - range_lo);
+        for (int d = 1; d < DEPTH_VALUES; ++d) {
+            final int clamped = d < range_lo ? range_lo : d > range_hi ? range_hi : d;
+            lut[d] = palette[(int) ((clamped - range_lo) / span * (PALETTE - 1) + 0.5f)];
+        }
+
+        histogram = new int[range_hi - range_lo + 1];
+        stripe_histograms = null;
+        histogram_valid = false;
+        ++rebuilds;
+    }
+
+    // Rewrite the in-range part of the table from the cumulative histogram of the previous frame
+    private void equalize() {
+        long total = 0;
+        for (int count : histogram) {
+            total += count;
+        }
+        if (total == 0) return;
+        final float scale = (float) (PALETTE - 1) / total;
+        long cumulative = 0;
+        for (int i = 0; i < histogram.length; ++i) {
+            // Center of the bin, so a scene at one depth lands mid-palette instead of at the far end
+            cumulative += histogram[i];
+            lut[range_lo + i] = palette[(int) ((cumulative - histogram[i] * 0.5f) * scale + 0.5f)];
+        }
+    }
+
+    private void lookup(char depth[], byte rgb[], int i0, int i1) {
+        final int[] lut = this.lut;
+        for (int i = i0, o = i0 * 3; i < i1; ++i, o += 3) {
+            final int c = lut[depth[i]];
+            rgb[o] = (byte) (c >> 16);
+            rgb[o + 1] = (byte) (c >> 8);
+            rgb[o + 2] = (byte) c;
+        }
+    }
+
+    private void lookupAndCount(char depth[], byte rgb[], int i0, int i1, int counts[]) {
+        final int lo = range_lo;
+        final int bins = counts.length;
+        // Count a quarter of the pixels, plenty for the shape of the histogram and much cheaper than the lookup
+        for (int i = i0 + (-i0 & (SAMPLING - 1)); i < i1; i += SAMPLING) {
+            // Unsigned compare tests lo <= d < lo + bins at once
+            final int bin = depth[i] - lo;
+            if (bin + Integer.MIN_VALUE < bins + Integer.MIN_VALUE) {
+                ++counts[bin];
+            }
+        }
+        lookup(depth, rgb, i0, i1);
+    }
+
+    private static int color(Colormap colormap, float t) {
+        switch (colormap) {
+            case JET: {
+                final int r = channel(1.5f - Math.abs(4 * t - 3));
+                final int g = channel(1.5f - Math.abs(4 * t - 2));
+                final int b = channel(1.5f - Math.abs(4 * t - 1));
+                return r << 16 | g << 8 | b;
+            }
+            case GRAYSCALE: {
+                final int v = channel(1 - 0.8f * t);
+                return v << 16 | v << 8 | v;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown colormap " + colormap);
+        }
+    }
+
+    private static int channel(float v) {
+        return v <= 0 ? 0 : v >= 1 ? 255 : (int) (v * 255 + 0.5f);
+    }
+}
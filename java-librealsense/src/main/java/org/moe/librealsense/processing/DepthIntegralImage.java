@@ -0,0 +1,229 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.moe.librealsense.processing;
+
+import org.moe.natj.general.ptr.ConstCharPtr;
+
+/**
+ * Summed-area tables over a z16 depth frame: sum of depth, count of valid (non-zero) pixels and count of valid pixels
+ * closer than a threshold. Once built, any rectangle can be queried in constant time.
+ * <p>
+ * Tables are (width + 1) x (height + 1) with a zero first row and column, and are reused across frames of the same size.
+ */
+public class DepthIntegralImage {
+    private int width;
+    private int height;
+    private int stride;
+
+    private long sum[];
+    private int valid[];
+    private int near[];
+    private char depth_data[];
+
+    private int nearThreshold;
+
+    /**
+     * @param nearThreshold  depth value (in depth units) below which a valid pixel is counted as near
+     */
+    public DepthIntegralImage(int nearThreshold) {
+        this.nearThreshold = nearThreshold;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getNearThreshold() {
+        return nearThreshold;
+    }
+
+    /**
+     * Change the near threshold, takes effect on the next build
+     */
+    public void setNearThreshold(int nearThreshold) {
+        this.nearThreshold = nearThreshold;
+    }
+
+    private void resize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        }
+        if (this.width == width && this.height == height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        this.stride = width + 1;
+        final int size = stride * (height + 1);
+        sum = new long[size];
+        valid = new int[size];
+        near = new int[size];
+    }
+
+    /**
+     * Copy a native depth frame and build the tables from it
+     */
+    public void build(ConstCharPtr depth_image, int width, int height) {
+        final int count = width * height;
+        if (depth_data == null || depth_data.length != count) {
+            depth_data = depth_image.toCharArray(count);
+        } else {
+            depth_image.copyTo(depth_data);
+        }
+        build(depth_data, width, height);
+    }
+
+    /**
+     * Build the tables in a single pass over the frame
+     */
+    public void build(char depth[], int width, int height) {
+        resize(width, height);
+        buildRows(depth, 0, height, true);
+    }
+
+    /**
+     * Build the tables with stripes of rows processed in parallel. Every stripe is first integrated on its own, then
+     * the last row of each stripe is carried down into the following stripes.
+     */
+    public void buildParallel(char depth[], int width, int height, int stripes) {
+        resize(width, height);
+        final int count = Math.max(1, Math.min(stripes, height));
+        if (count == 1) {
+            buildRows(depth, 0, height, true);
+            return;
+        }
+
+        // Phase one: independent stripes, each starting from an implicit zero row
+        Stripes.run(height, count, (s, y0, y1) -> buildRows(depth, y0, y1, s == 0));
+
+        // Carry the last rows down sequentially, this touches only one row per stripe
+        for (int s = 1; s < count; ++s) {
+            addRow(Stripes.start(height, count, s), Stripes.start(height, count, s + 1));
+        }
+
+        // Phase two: add the now final row above each stripe to the remaining rows of that stripe
+        Stripes.run(height, count, (s, y0, y1) -> {
+            if (s == 0) return;
+            for (int y = y0 + 1; y < y1; ++y) {
+                addRow(y0, y);
+            }
+        });
+    }
+
+    private void buildRows(char depth[], int y0, int y1, boolean fromTop) {
+        final long[] sum = this.sum;
+        final int[] valid = this.valid;
+        final int[] near = this.near;
+        final int width = this.width;
+        final int stride = this.stride;
+        final int threshold = this.nearThreshold;
+
+        for (int y = y0; y < y1; ++y) {
+            final int src = y * width;
+            final int dst = (y + 1) * stride + 1;
+            final boolean first = y == y0 && !fromTop;
+            final int up = first ? dst : y * stride + 1;
+
+            long rowSum = 0;
+            int rowValid = 0;
+            int rowNear = 0;
+            for (int x = 0; x < width; ++x) {
+                final int d = depth[src + x];
+                rowSum += d;
+                if (d != 0) {
+                    ++rowValid;
+                    if (d < threshold) ++rowNear;
+                }
+                if (first) {
+                    sum[dst + x] = rowSum;
+                    valid[dst + x] = rowValid;
+                    near[dst + x] = rowNear;
+                } else {
+                    sum[dst + x] = sum[up + x] + rowSum;
+                    valid[dst + x] = valid[up + x] + rowValid;
+                    near[dst + x] = near[up + x] + rowNear;
+                }
+            }
+        }
+    }
+
+    // Adds table row 'from' into table row 'to'
+    private void addRow(int from, int to) {
+        final int a = from * stride + 1;
+        final int b = to * stride + 1;
+        for (int x = 0; x < width; ++x) {
+            sum[b + x] += sum[a + x];
+            valid[b + x] += valid[a + x];
+            near[b + x] += near[a + x];
+        }
+    }
+
+    private int index(int x, int y) {
+        return y * stride + x;
+    }
+
+    /**
+     * Sum of depth values in the rectangle [x0, x1) x [y0, y1), coordinates are clamped to the frame
+     */
+    public long sum(int x0, int y0, int x1, int y1) {
+        x0 = clamp(x0, width);
+        x1 = clamp(x1, width);
+        y0 = clamp(y0, height);
+        y1 = clamp(y1, height);
+        if (x1 <= x0 || y1 <= y0) return 0;
+        return sum[index(x1, y1)] - sum[index(x0, y1)] - sum[index(x1, y0)] + sum[index(x0, y0)];
+    }
+
+    /**
+     * Number of non-zero depth pixels in the rectangle [x0, x1) x [y0, y1)
+     */
+    public int validCount(int x0, int y0, int x1, int y1) {
+        return count(valid, x0, y0, x1, y1);
+    }
+
+    /**
+     * Number of non-zero depth pixels below the near threshold in the rectangle [x0, x1) x [y0, y1)
+     */
+    public int nearCount(int x0, int y0, int x1, int y1) {
+        return count(near, x0, y0, x1, y1);
+    }
+
+    /**
+     * Mean of the valid depth values in the rectangle [x0, x1) x [y0, y1), in depth units, or 0 if there are none
+     */
+    public float meanDepth(int x0, int y0, int x1, int y1) {
+        final int n = validCount(x0, y0, x1, y1);
+        return n == 0 ? 0 : (float) ((double) sum(x0, y0, x1, y1) / n);
+    }
+
+    private int count(int table[], int x0, int y0, int x1, int y1) {
+        x0 = clamp(x0, width);
+        x1 = clamp(x1, width);
+        y0 = clamp(y0, height);
+        y1 = clamp(y1, height);
+        if (x1 <= x0 || y1 <= y0) return 0;
+        return table[index(x1, y1)] - table[index(x0, y1)] - table[index(x1, y0)] + table[index(x0, y0)];
+    }
+
+    private static int clamp(int v, int max) {
+        return v < 0 ? 0 : v > max ? max : v;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.processing;
+
+import org.moe.librealsense.Calibration;
+import org.moe.librealsense.Extrinsics;
+import org.moe.librealsense.RS;
+
+import java.util.Arrays;
+
+/**
+ * Block matching disparity between the two rectified y8 infrared images (RS.stream.infrared as left and
+ * RS.stream.infrared2 as right view), as a software cross-check or fallback for the hardware depth.
+ * <p>
+ * Pixels are compared by the Hamming distance of their 5x5 census transforms (Integer.bitCount, which the JIT maps to
+ * a popcount instruction), costs are summed over a square window and the disparity with the lowest cost wins, refined
+ * to sub-pixel precision with a parabola fit. The output is disparity16 in units of 1 / SUBPIXEL pixel, 0 where no
+ * unique match was found. Cost buffers are allocated once per stripe and reused for every frame.
+ */
+public class StereoMatcher {
+    /**
+     * Disparity values per pixel of disparity
+     */
+    public static final int SUBPIXEL = 32;
+
+    private static final int CENSUS_BITS = 24;
+
+    private final int width;
+    private final int height;
+    private final int max_disparity;
+    private final int radius;
+    private int uniqueness = 10;
+
+    private final int census_left[];
+    private final int census_right[];
+    private Workspace workspaces[];
+
+    // Cost buffers of one stripe
+    private static final class Workspace {
+        final int rows[][];  /* Hamming costs of the window rows, width x max_disparity each */
+        final int vertical[]; /* costs summed over the window rows */
+        final int sums[];     /* costs summed over the window, for the current pixel */
+
+        Workspace(int width, int max_disparity, int radius) {
+            rows = new int[2 * radius + 1][width * max_disparity];
+            vertical = new int[width * max_disparity];
+            sums = new int[max_disparity];
+        }
+    }
+
+    /**
+     * @param max_disparity  number of disparities searched, in pixels
+     * @param radius         half size of the matching window, 2 gives a 5x5 window
+     */
+    public StereoMatcher(int width, int height, int max_disparity, int radius) {
+        if (width <= 0 || height <= 0 || max_disparity <= 1 || radius < 0) {
+            throw new IllegalArgumentException("Invalid matcher parameters");
+        }
+        if (max_disparity * SUBPIXEL > Character.MAX_VALUE) {
+            throw new IllegalArgumentException("Disparity range does not fit disparity16");
+        }
+        this.width = width;
+        this.height = height;
+        this.max_disparity = max_disparity;
+        this.radius = radius;
+        this.census_left = new int[width * height];
+        this.census_right = new int[width * height];
+    }
+
+    /**
+     * Distance in meters between the two infrared viewpoints
+     */
+    public static float baseline(Calibration calibration) {
+        final Extrinsics extrin = calibration.getExtrinsics(RS.stream.infrared, RS.stream.infrared2);
+        if (extrin == null) {
+            throw new IllegalArgumentException("Calibration has no infrared to infrared2 extrinsics");
+        }
+        final float t[] = extrin.translation;
+        return (float) Math.sqrt(t[0] * t[0] + t[1] * t[1] + t[2] * t[2]);
+    }
+
+    /**
+     * Minimum margin in percent by which the best cost must beat the best non-neighboring disparity, default 10
+     */
+    public void setUniqueness(int percent) {
+        this.uniqueness = percent;
+    }
+
+    /**
+     * Compute the disparity of the left image on the calling thread
+     */
+    public void compute(byte left[], byte right[], char disparity[]) {
+        computeParallel(left, right, disparity, 1);
+    }
+
+    /**
+     * Compute the disparity with stripes of rows matched in parallel
+     */
+    public void computeParallel(byte left[], byte right[], char disparity[], int stripes) {
+        final int size = width * height;
+        if (left.length < size || right.length < size || disparity.length < size) {
+            throw new IllegalArgumentException("Image is too small");
+        }
+        final int count = Math.max(1, Math.min(stripes, height));
+        if (workspaces == null || workspaces.length != count) {
+            workspaces = new Workspace[count];
+            for (int s = 0; s < count; ++s) {
+                workspaces[s] = new Workspace(width, max_disparity, radius);
+            }
+        }
+
+        Stripes.run(height, count, (s, y0, y1) -> {
+            census(left, census_left, y0, y1);
+            census(right, census_right, y0, y1);
+        });
+        Stripes.run(height, count, (s, y0, y1) -> match(workspaces[s], disparity, y0, y1));
+    }
+
+    /**
+     * Convert disparity16 to z16 depth, e.g. for comparison with the hardware depth stream
+     *
+     * @param fx           focal length of the infrared image in pixels
+     * @param baseline     distance between the viewpoints in meters
+     * @param depth_scale  depth in meters corresponding to a depth value of 1
+     */
+    public static void toDepth(char disparity[], char depth[], float fx, float baseline, float depth_scale) {
+        final float k = fx * baseline * SUBPIXEL / depth_scale;
+        for (int i = 0; i < disparity.length; ++i) {
+            final char d = disparity[i];
+            final float z = d == 0 ? 0 : k / d;
+            depth[i] = z > Character.MAX_VALUE ? 0 : (char) (z + 0.5f);
+        }
+    }
+
+    // 5x5 census transform, the 24 neighbors compared against the center
+    private void census(byte image[], int census[], int y0, int y1) {
+        for (int y = y0; y < y1; ++y) {
+            for (int x = 0; x < width; ++x) {
+                if (x < 2 || y < 2 || x >= width - 2 || y >= height - 2) {
+                    census[y * width + x] = 0;
+                    continue;
+                }
+                final int center = image[y * width + x] & 0xFF;
+                int bits = 0;
+                for (int dy = -2; dy <= 2; ++dy) {
+                    final int row = (y + dy) * width + x;
+                    for (int dx = -2; dx <= 2; ++dx) {
+                        if (dx == 0 && dy == 0) continue;
+                        bits = bits << 1 | ((image[row + dx] & 0xFF) < center ? 1 : 0);
+                    }
+                }
+                census[y * width + x] = bits;
+            }
+        }
+    }
+
+    // Hamming costs of all disparities for one row
+    private void rowCosts(int y, int costs[]) {
+        final int D = max_disparity;
+        final int base = y * width;
+        for (int x = 0; x < width; ++x) {
+            final int c = census_left[base + x];
+            final int o = x * D;
+            final int valid = Math.min(D, x + 1);
+            for (int d = 0; d < valid; ++d) {
+                costs[o + d] = Integer.bitCount(c ^ census_right[base + x - d]);
+            }
+            for (int d = valid; d < D; ++d) {
+                costs[o + d] = CENSUS_BITS;
+            }
+        }
+    }
+
+    private void match(Workspace ws, char disparity[], int y0, int y1) {
+        final int D = max_disparity;
+        final int R = 2 * radius + 1;
+        final int vertical[] = ws.vertical;
+        final int sums[] = ws.sums;
+        final int n = width * D;
+
+        // Prime the vertical window around the first row, rows beyond the image border are replicated
+        Arrays.fill(vertical, 0);
+        for (int k = 0; k < R; ++k) {
+            final int costs[] = ws.rows[k];
+            rowCosts(clampRow(y0 - radius + k), costs);
+            for (int i = 0; i < n; ++i) vertical[i] += costs[i];
+        }
+
+        for (int y = y0; y < y1; ++y) {
+            if (y > y0) {
+                // Slide the window down by one row, the slot of the oldest row receives the newest
+                final int costs[] = ws.rows[(y - 1 - y0) % R];
+                for (int i = 0; i < n; ++i) vertical[i] -= costs[i];
+                rowCosts(clampRow(y + radius), costs);
+                for (int i = 0; i < n; ++i) vertical[i] += costs[i];
+            }
+
+            // Horizontal window sums are kept per disparity while walking along the row
+            Arrays.fill(sums, 0);
+            for (int x = 0; x < radius && x < width; ++x) {
+                for (int d = 0; d < D; ++d) sums[d] += vertical[x * D + d];
+            }
+            final int out = y * width;
+            for (int x = 0; x < width; ++x) {
+                if (x + radius < width) {
+                    final int o = (x + radius) * D;
+                    for (int d = 0; d < D; ++d) sums[d] += vertical[o + d];
+                }
+                if (x - radius - 1 >= 0) {
+                    final int o = (x - radius - 1) * D;
+                    for (int d = 0; d < D; ++d) sums[d] -= vertical[o + d];
+                }
+                disparity[out + x] = select(sums, Math.min(D, x + 1));
+            }
+        }
+    }
+
+    // Winner takes all with uniqueness check and sub-pixel refinement
+    private char select(int sums[], int valid) {
+        int best = 0;
+        int best_cost = Integer.MAX_VALUE;
+        for (int d = 0; d < valid; ++d) {
+            if (sums[d] < best_cost) {
+                best_cost = sums[d];
+                best = d;
+            }
+        }
+        if (best == 0) {
+            return 0;
+        }
+        int second_cost = Integer.MAX_VALUE;
+        for (int d = 0; d < valid; ++d) {
+            if ((d < best - 1 || d > best + 1) && sums[d] < second_cost) {
+                second_cost = sums[d];
+            }
+        }
+        if (second_cost != Integer.MAX_VALUE && (long) best_cost * 100 > (long) second_cost * (100 - uniqueness)) {
+            return 0;
+        }
+
+        float offset = 0;
+        if (best + 1 < valid) {
+            final int cm = sums[best - 1], cp = sums[best + 1];
+            final int denom = cm - 2 * best_cost + cp;
+            if (denom > 0) {
+                offset = 0.5f * (cm - cp) / denom;
+            }
+        }
+        return (char) Math.max(1, Math.round((best + offset) * SUBPIXEL));
+    }
+
+    private int clampRow(int y) {
+        return y < 0 ? 0 : y >= height ? height - 1 : y;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.moe.librealsense.processing;
+
+import java.util.stream.IntStream;
+
+/**
+ * Splits an image into horizontal stripes of rows and processes them on the common fork-join pool.
+ */
+public final class Stripes {
+    private Stripes() {
+    }
+
+    public interface RowRange {
+        /**
+         * Process rows [y0, y1) of the image
+         */
+        void apply(int stripe, int y0, int y1);
+    }
+
+    /**
+     * Number of stripes worth using on this machine
+     */
+    public static int defaultCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * First row of a stripe, stripes differ in size by at most one row
+     */
+    public static int start(int rows, int stripes, int stripe) {
+        return (int) ((long) rows * stripe / stripes);
+    }
+
+    /**
+     * Run the task for every stripe and return once all of them are done
+     */
+    public static void run(int rows, int stripes, RowRange task) {
+        final int count = Math.max(1, Math.min(stripes, rows));
+        if (count == 1) {
+            task.apply(0, 0, rows);
+            return;
+        }
+        IntStream.range(0, count).parallel().forEach(s -> task.apply(s, start(rows, count, s), start(rows, count, s + 1)));
+    }
+}
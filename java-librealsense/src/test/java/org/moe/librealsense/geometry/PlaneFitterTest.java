@@ -0,0 +1,110 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.geometry;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PlaneFitterTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+    // Tilted wall z = 2 + 0.2 x with a quarter of the points scattered off it
+    private static float[] wallWithOutliers() {
+        final Random random = new Random(7);
+        final float xyz[] = new float[WIDTH * HEIGHT * 3];
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                final int i = (y * WIDTH + x) * 3;
+                final float px = (x - WIDTH / 2) * 0.01f;
+                final float py = (y - HEIGHT / 2) * 0.01f;
+                xyz[i] = px;
+                xyz[i + 1] = py;
+                xyz[i + 2] = 2 + 0.2f * px + (random.nextInt(4) == 0 ? 0.1f + random.nextFloat() : 0);
+            }
+        }
+        return xyz;
+    }
+
+    @Test
+    public void fixedSeedIsDeterministic() {
+        final float xyz[] = wallWithOutliers();
+        PlaneFitter.Plane first = null;
+        long mask[] = null;
+        for (int run = 0; run < 3; ++run) {
+            final PlaneFitter fitter = new PlaneFitter(WIDTH, HEIGHT);
+            fitter.setSeed(42);
+            fitter.setStripes(run + 1);
+            final PlaneFitter.Plane plane = fitter.fit(xyz);
+            assertNotNull(plane);
+            if (first == null) {
+                first = plane;
+                mask = fitter.getInliers().clone();
+                continue;
+            }
+            assertEquals(first.a, plane.a, 0);
+            assertEquals(first.b, plane.b, 0);
+            assertEquals(first.c, plane.c, 0);
+            assertEquals(first.d, plane.d, 0);
+            assertEquals(first.inliers, plane.inliers);
+            assertArrayEquals(mask, fitter.getInliers());
+        }
+
+        // Normal of z - 0.2 x = 2, up to sign
+        final float norm = (float) Math.sqrt(1 + 0.04);
+        final float sign = Math.signum(first.c);
+        assertEquals(-0.2f / norm, first.a * sign, 1e-3f);
+        assertEquals(0, first.b, 1e-3f);
+        assertEquals(1 / norm, first.c * sign, 1e-3f);
+        assertEquals(0, first.distance(0, 0, 2), 1e-3f);
+
+        int outliers = 0;
+        for (int i = 0; i < WIDTH * HEIGHT; ++i) {
+            if (xyz[i * 3 + 2] - 0.2f * xyz[i * 3] > 2.05f) ++outliers;
+        }
+        assertEquals(WIDTH * HEIGHT - outliers, first.inliers);
+    }
+
+    @Test
+    public void keepsSearchingAfterDegenerateSamples() {
+        // Isolated points have no valid neighbor, only the 3x3 block yields non-degenerate samples
+        final float xyz[] = new float[WIDTH * HEIGHT * 3];
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                final boolean block = x >= 80 && x < 83 && y >= 60 && y < 63;
+                if (!block && (x % 4 != 0 || y % 4 != 0)) continue;
+                final int i = (y * WIDTH + x) * 3;
+                xyz[i] = (x - WIDTH / 2) * 0.01f;
+                xyz[i + 1] = (y - HEIGHT / 2) * 0.01f;
+                xyz[i + 2] = 1.5f;
+            }
+        }
+        for (long seed = 0; seed < 8; ++seed) {
+            final PlaneFitter fitter = new PlaneFitter(WIDTH, HEIGHT);
+            fitter.setNeighborRadius(1);
+            fitter.setSampleStride(1);
+            fitter.setSeed(seed);
+            final PlaneFitter.Plane plane = fitter.fit(xyz);
+            assertNotNull("seed " + seed, plane);
+            assertEquals(1, Math.abs(plane.c), 1e-4f);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.geometry;
+
+import org.junit.Test;
+import org.moe.librealsense.Extrinsics;
+import org.moe.librealsense.Intrinsics;
+import org.moe.librealsense.RS;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TsdfVolumeTest {
+    private static final int SIZE = 64;
+    private static final float VOXEL = 0.01f;
+    private static final float DEPTH_SCALE = 0.001f;
+
+    // 64x48 camera at the world origin looking along +z, the volume spans z from 0.5 to 1.14 m
+    private static final Intrinsics INTRIN = new Intrinsics(64, 48, 31.5f, 23.5f, 60, 60, RS.distortion.none.value,
+            new float[5]);
+    private static final Extrinsics POSE = new Extrinsics(new float[]{1, 0, 0, 0, 1, 0, 0, 0, 1}, new float[3]);
+
+    private static TsdfVolume volume() {
+        return new TsdfVolume(SIZE, SIZE, SIZE, VOXEL, new float[]{-SIZE * VOXEL / 2, -SIZE * VOXEL / 2, 0.5f});
+    }
+
+    private static char[] planeDepth(float z) {
+        final char depth[] = new char[INTRIN.width * INTRIN.height];
+        Arrays.fill(depth, (char) Math.round(z / DEPTH_SCALE));
+        return depth;
+    }
+
+    // Depth of the first intersection of the pixel ray with a sphere, 0 where the ray misses it
+    private static float sphereDepth(int x, int y, float center_z, float radius) {
+        final float u = (x - INTRIN.ppx) / INTRIN.fx, v = (y - INTRIN.ppy) / INTRIN.fy;
+        final float a = u * u + v * v + 1;
+        final float discriminant = center_z * center_z - a * (center_z * center_z - radius * radius);
+        return discriminant < 0 ? 0 : (center_z - (float) Math.sqrt(discriminant)) / a;
+    }
+
+    private static char[] sphereDepth(float center_z, float radius) {
+        final char depth[] = new char[INTRIN.width * INTRIN.height];
+        for (int y = 0, i = 0; y < INTRIN.height; ++y) {
+            for (int x = 0; x < INTRIN.width; ++x, ++i) {
+                depth[i] = (char) Math.round(sphereDepth(x, y, center_z, radius) / DEPTH_SCALE);
+            }
+        }
+        return depth;
+    }
+
+    @Test
+    public void planeCrossesZeroAtItsDepth() {
+        final TsdfVolume volume = volume();
+        volume.integrate(planeDepth(0.8f), INTRIN, DEPTH_SCALE, POSE, 1);
+        final FloatBuffer distances = volume.getDistances();
+        final ShortBuffer weights = volume.getWeights();
+
+        // Voxel centers along z are at 0.5 + (iz + 0.5) * 0.01, so the plane lies between iz 29 and 30
+        for (int iy = 24; iy < 40; ++iy) {
+            for (int ix = 24; ix < 40; ++ix) {
+                final int column = iy * SIZE + ix;
+                final float front = distances.get(29 * SIZE * SIZE + column);
+                final float back = distances.get(30 * SIZE * SIZE + column);
+                assertTrue(front > 0);
+                assertTrue(back < 0);
+                final float crossing = 0.5f + (29.5f + front / (front - back)) * VOXEL;
+                assertEquals(0.8f, crossing, 1e-4f);
+
+                // Free space is truncated, space far behind the surface is never observed
+                assertEquals(1, distances.get(10 * SIZE * SIZE + column), 0);
+                assertEquals(1, weights.get(10 * SIZE * SIZE + column));
+                assertEquals(0, weights.get(45 * SIZE * SIZE + column));
+            }
+        }
+    }
+
+    @Test
+    public void raycastFindsPlane() {
+        final TsdfVolume volume = volume();
+        for (int i = 0; i < 3; ++i) {
+            volume.integrate(planeDepth(0.8f), INTRIN, DEPTH_SCALE, POSE, 2);
+        }
+        final int count = INTRIN.width * INTRIN.height;
+        final float depth[] = new float[count];
+        final float nx[] = new float[count], ny[] = new float[count], nz[] = new float[count];
+        volume.raycast(INTRIN, POSE, 0.1f, depth, nx, ny, nz, 2);
+
+        final int center = 24 * INTRIN.width + 32;
+        assertEquals(0.8f, depth[center], 0.002f);
+        // Distances grow towards the camera
+        assertEquals(0, nx[center], 0.05f);
+        assertEquals(0, ny[center], 0.05f);
+        assertEquals(-1, nz[center], 0.05f);
+    }
+
+    @Test
+    public void raycastFindsSphere() {
+        final TsdfVolume volume = volume();
+        volume.integrate(sphereDepth(0.85f, 0.15f), INTRIN, DEPTH_SCALE, POSE, 3);
+        final int count = INTRIN.width * INTRIN.height;
+        final float depth[] = new float[count];
+        volume.raycast(INTRIN, POSE, 0.1f, depth, null, null, null, 3);
+
+        // Away from the silhouette, where the surface is seen at a grazing angle
+        final float radius_pixels = INTRIN.fx * 0.15f / 0.85f * 0.7f;
+        int checked = 0;
+        for (int y = 0, i = 0; y < INTRIN.height; ++y) {
+            for (int x = 0; x < INTRIN.width; ++x, ++i) {
+                final float dx = x - INTRIN.ppx, dy = y - INTRIN.ppy;
+                if (dx * dx + dy * dy > radius_pixels * radius_pixels) continue;
+                assertEquals("pixel " + x + "," + y, sphereDepth(x, y, 0.85f, 0.15f), depth[i], VOXEL);
+                ++checked;
+            }
+        }
+        assertTrue(checked > 100);
+    }
+
+    @Test
+    public void parallelIntegrationMatchesSerial() {
+        final TsdfVolume serial = volume();
+        final TsdfVolume parallel = volume();
+        serial.integrate(sphereDepth(0.85f, 0.15f), INTRIN, DEPTH_SCALE, POSE, 1);
+        parallel.integrate(sphereDepth(0.85f, 0.15f), INTRIN, DEPTH_SCALE, POSE, 4);
+        assertEquals(serial.getDistances(), parallel.getDistances());
+        assertEquals(serial.getWeights(), parallel.getWeights());
+    }
+}
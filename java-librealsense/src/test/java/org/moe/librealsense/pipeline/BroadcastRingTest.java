@@ -0,0 +1,77 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BroadcastRingTest {
+    @Test
+    public void lateRequiredConsumerGatesProducer() {
+        final BroadcastRing<long[]> ring = new BroadcastRing<>(4, () -> new long[1]);
+        for (int i = 0; i < 10; ++i) {
+            final long seq = ring.tryClaim();
+            assertEquals(i, seq);
+            ring.publish(seq);
+        }
+
+        // Starts after sequence 9 and never releases, so only the slots up to 9 + 4 may be claimed
+        final BroadcastRing<long[]>.Consumer consumer = ring.addConsumer("late", true);
+        int claimed = 0;
+        long seq;
+        while ((seq = ring.tryClaim()) >= 0 && claimed < 20) {
+            ring.publish(seq);
+            ++claimed;
+        }
+        assertEquals(4, claimed);
+
+        assertEquals(10, consumer.poll());
+        consumer.release(10);
+        assertEquals(14, ring.tryClaim());
+        assertEquals(-1, ring.tryClaim());
+    }
+
+    @Test
+    public void optionalConsumerDoesNotGate() {
+        final BroadcastRing<long[]> ring = new BroadcastRing<>(4, () -> new long[1]);
+        final BroadcastRing<long[]>.Consumer consumer = ring.addConsumer("viewer", false);
+        for (int i = 0; i < 10; ++i) {
+            final long seq = ring.tryClaim();
+            assertEquals(i, seq);
+            ring.get(seq)[0] = i;
+            ring.publish(seq);
+        }
+        // A whole ring behind, the consumer skips to the newest element
+        assertEquals(9, consumer.poll());
+        assertEquals(9, ring.get(9)[0]);
+        assertTrue(consumer.isValid(9));
+        assertEquals(-1, consumer.poll());
+    }
+
+    @Test
+    public void removedConsumerStopsGating() {
+        final BroadcastRing<long[]> ring = new BroadcastRing<>(2, () -> new long[1]);
+        final BroadcastRing<long[]>.Consumer consumer = ring.addConsumer("stalled", true);
+        ring.publish(ring.tryClaim());
+        ring.publish(ring.tryClaim());
+        assertEquals(-1, ring.tryClaim());
+        ring.removeConsumer(consumer);
+        assertEquals(2, ring.tryClaim());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class QualityControllerTest {
+    private static final long FAST = 1000000;  /* 1 ms, under the upgrade margin */
+    private static final long SLOW = 12000000; /* 12 ms, over the 8 ms target */
+
+    private QualityController quality;
+    private QualityController.Probe upstream;
+    private QualityController.Probe downstream;
+
+    @Before
+    public void setUp() {
+        // 10 ms frame period, 8 ms target
+        quality = new QualityController(100, QualityController.defaultLevels(1));
+        quality.setHysteresis(3, 10, 0.6);
+        upstream = quality.probe("upstream");
+        downstream = quality.probe("downstream");
+    }
+
+    private void run(int frames, long nanos) {
+        for (int i = 0; i < frames; ++i) {
+            upstream.record(FAST);
+            downstream.record(nanos);
+        }
+    }
+
+    @Test
+    public void countsFramesOncePerFrameSet() {
+        run(5, FAST);
+        assertEquals(5, quality.getFrames());
+    }
+
+    @Test
+    public void degradesAfterDegradeFrames() {
+        run(2, SLOW);
+        assertEquals(0, quality.getLevelIndex());
+        run(1, SLOW);
+        assertEquals(1, quality.getLevelIndex());
+        assertEquals(1, quality.getDegrades());
+        assertEquals(3, quality.getDecisions().get(0).frame);
+        assertEquals(12.0, quality.getDecisions().get(0).latencyMillis, 1e-9);
+    }
+
+    @Test
+    public void upgradesAfterUpgradeFrames() {
+        run(3, SLOW);
+        run(9, FAST);
+        assertEquals(1, quality.getLevelIndex());
+        run(1, FAST);
+        assertEquals(0, quality.getLevelIndex());
+        assertEquals(1, quality.getUpgrades());
+        assertEquals(1, quality.getUpgradePenalty());
+    }
+
+    @Test
+    public void shortLivedUpgradeDoublesPenalty() {
+        run(3, SLOW);   /* degrade at frame 3 */
+        run(10, FAST);  /* upgrade at frame 13 */
+        run(3, SLOW);   /* degrade at frame 16, 3 frames after the upgrade */
+        assertEquals(2, quality.getUpgradePenalty());
+
+        run(19, FAST);
+        assertEquals(1, quality.getLevelIndex());
+        run(1, FAST);   /* upgrade at frame 36 after twice the wait */
+        assertEquals(0, quality.getLevelIndex());
+
+        final List<QualityController.Decision> decisions = quality.getDecisions();
+        assertEquals(4, decisions.size());
+        assertEquals(3, decisions.get(0).frame);
+        assertEquals(13, decisions.get(1).frame);
+        assertEquals(16, decisions.get(2).frame);
+        assertEquals(36, decisions.get(3).frame);
+
+        // A level held for 16 times the wait resets the penalty
+        run(160, FAST);
+        assertEquals(2, quality.getUpgradePenalty());
+        run(1, FAST);
+        assertEquals(1, quality.getUpgradePenalty());
+    }
+
+    @Test
+    public void borderlineLoadSettlesAtLongestWait() {
+        // Over the target at full quality, well under it one level down
+        quality.setHysteresis(3, 60, 0.6);
+        for (int i = 0; i < 20000; ++i) {
+            run(1, quality.getLevelIndex() == 0 ? SLOW : FAST);
+        }
+        assertEquals(16, quality.getUpgradePenalty());
+
+        // Waits of 60, 120, 240, 480 and 960 frames, then 960 frames before every further attempt
+        final List<QualityController.Decision> decisions = quality.getDecisions();
+        int attempts = 0;
+        for (int i = 1; i < decisions.size(); i += 2) {
+            assertEquals(1, decisions.get(i - 1).to);
+            assertEquals(0, decisions.get(i).to);
+            assertEquals(60 << Math.min(attempts, 4), decisions.get(i).frame - decisions.get(i - 1).frame);
+            ++attempts;
+        }
+        assertEquals(quality.getUpgrades(), attempts);
+        assertTrue(attempts > 10);
+    }
+
+    @Test
+    public void slowUpstreamStageDrivesLevel() {
+        for (int i = 0; i < 3; ++i) {
+            upstream.record(SLOW);
+            downstream.record(FAST);
+        }
+        assertEquals(1, quality.getLevelIndex());
+        assertSame(quality.getLevels().get(1), quality.getLevel());
+    }
+}
@@ -0,0 +1,249 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.junit.Test;
+import org.moe.librealsense.Calibration;
+import org.moe.librealsense.Extrinsics;
+import org.moe.librealsense.Intrinsics;
+import org.moe.librealsense.RS;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class SharedFrameRingTest {
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 3;
+
+    private static Calibration calibration() {
+        final Intrinsics intrin = new Intrinsics(WIDTH, HEIGHT, 1.5f, 1, 3, 3, RS.distortion.none.value, new float[5]);
+        final float identity[] = {1, 0, 0, 0, 1, 0, 0, 0, 1};
+        return new Calibration(0.001f)
+                .setIntrinsics(RS.stream.depth, intrin)
+                .setIntrinsics(RS.stream.color, intrin)
+                .setExtrinsics(RS.stream.depth, RS.stream.color, new Extrinsics(identity, new float[]{0.025f, 0, 0}));
+    }
+
+    // Depth and color frames filled with values derived from the capture sequence
+    private static FrameSet frames(long sequence, Calibration calibration) {
+        final FrameSet frames = new FrameSet();
+        frames.reset(sequence, calibration);
+        final ByteBuffer depth = frames.get(RS.stream.depth).prepare(WIDTH, HEIGHT, RS.format.z16.value,
+                (int) sequence * 33);
+        for (int i = 0; i < WIDTH * HEIGHT; ++i) {
+            depth.putChar(i * 2, (char) (sequence * 100 + i));
+        }
+        final ByteBuffer color = frames.get(RS.stream.color).prepare(WIDTH, HEIGHT, RS.format.rgb8.value,
+                (int) sequence * 33);
+        for (int i = 0; i < WIDTH * HEIGHT * 3; ++i) {
+            color.put(i, (byte) (sequence + i));
+        }
+        return frames;
+    }
+
+    private static void assertSameFrames(FrameSet expected, FrameSet actual) {
+        assertEquals(expected.getSequence(), actual.getSequence());
+        for (RS.stream stream : new RS.stream[]{RS.stream.depth, RS.stream.color}) {
+            final FrameSet.Frame e = expected.get(stream);
+            final FrameSet.Frame a = actual.get(stream);
+            assertTrue(a.isPresent());
+            assertEquals(e.getWidth(), a.getWidth());
+            assertEquals(e.getHeight(), a.getHeight());
+            assertEquals(e.getFormat(), a.getFormat());
+            assertEquals(e.getTimestamp(), a.getTimestamp());
+            assertEquals(e.getData(), a.getData());
+        }
+        assertFalse(actual.has(RS.stream.infrared));
+    }
+
+    @Test
+    public void readsBackPublishedFrames() throws Exception {
+        final Path file = Files.createTempFile("frames", ".ring");
+        final Calibration calibration = calibration();
+        try (SharedFrameWriter writer = new SharedFrameWriter(file, 2, frames(0, calibration));
+             SharedFrameReader reader = new SharedFrameReader(file)) {
+            assertEquals(-1, reader.latest());
+            assertTrue(reader.hasStream(RS.stream.depth));
+            assertFalse(reader.hasStream(RS.stream.infrared));
+            assertEquals(0.001f, reader.getCalibration().getDepthScale(), 0);
+            assertEquals(0.025f, reader.getCalibration().getExtrinsics(RS.stream.depth, RS.stream.color)
+                    .translation[0], 0);
+            assertEquals(-0.025f, reader.getCalibration().getExtrinsics(RS.stream.color, RS.stream.depth)
+                    .translation[0], 1e-7f);
+
+            writer.accept(frames(10, calibration));
+            writer.accept(frames(11, calibration));
+            assertEquals(1, reader.latest());
+            assertEquals(1, reader.await(0));
+
+            final FrameSet copy = new FrameSet();
+            assertTrue(reader.read(0, copy));
+            assertSameFrames(frames(10, calibration), copy);
+            assertTrue(reader.read(1, copy));
+            assertSameFrames(frames(11, calibration), copy);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void overwrittenSlotIsInvalid() throws Exception {
+        final Path file = Files.createTempFile("frames", ".ring");
+        final Calibration calibration = calibration();
+        try (SharedFrameWriter writer = new SharedFrameWriter(file, 2, frames(0, calibration));
+             SharedFrameReader reader = new SharedFrameReader(file)) {
+            writer.accept(frames(10, calibration));
+            writer.accept(frames(11, calibration));
+            assertTrue(reader.isValid(0));
+
+            // Sequence 2 reuses the slot of sequence 0
+            writer.accept(frames(12, calibration));
+            assertFalse(reader.isValid(0));
+            assertTrue(reader.isValid(1));
+            assertTrue(reader.isValid(2));
+
+            final FrameSet copy = new FrameSet();
+            assertFalse(reader.read(0, copy));
+            assertTrue(reader.read(2, copy));
+            assertSameFrames(frames(12, calibration), copy);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void rejectedFrameSetLeavesSlotValid() throws Exception {
+        final Path file = Files.createTempFile("frames", ".ring");
+        final Calibration calibration = calibration();
+        try (SharedFrameWriter writer = new SharedFrameWriter(file, 2, frames(0, calibration));
+             SharedFrameReader reader = new SharedFrameReader(file)) {
+            writer.accept(frames(10, calibration));
+            writer.accept(frames(11, calibration));
+
+            final FrameSet resized = frames(12, calibration);
+            resized.get(RS.stream.color).prepare(WIDTH * 2, HEIGHT * 2, RS.format.rgb8.value, 0);
+            try {
+                writer.accept(resized);
+                fail("Mode change accepted");
+            } catch (IllegalArgumentException expected) {
+                // the slot of sequence 0 must be untouched
+            }
+            assertEquals(2, writer.getPublished());
+            assertEquals(1, reader.latest());
+            assertTrue(reader.isValid(0));
+            final FrameSet copy = new FrameSet();
+            assertTrue(reader.read(0, copy));
+            assertSameFrames(frames(10, calibration), copy);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void unpublishedSlotIsNotRead() throws Exception {
+        final Path file = Files.createTempFile("frames", ".ring");
+        final Calibration calibration = calibration();
+        try (SharedFrameWriter writer = new SharedFrameWriter(file, 2, frames(0, calibration));
+             SharedFrameReader reader = new SharedFrameReader(file)) {
+            final FrameSet copy = new FrameSet();
+            assertFalse(reader.isValid(0));
+            assertFalse(reader.read(0, copy));
+            assertFalse(copy.has(RS.stream.depth));
+
+            writer.accept(frames(10, calibration));
+            writer.accept(frames(11, calibration));
+            assertTrue(reader.read(1, copy));
+
+            // Sequence 2 goes into the slot still holding sequence 0, nothing of it may be copied
+            assertFalse(reader.isValid(2));
+            assertFalse(reader.read(2, copy));
+            assertSameFrames(frames(11, calibration), copy);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // Every depth value of a frame set is its capture sequence, so a torn copy mixes values
+    private static FrameSet uniform(long sequence, FrameSet frames) {
+        frames.reset(sequence, null);
+        final ByteBuffer depth = frames.get(RS.stream.depth).prepare(320, 240, RS.format.z16.value, (int) sequence);
+        for (int i = 0; i < 320 * 240; ++i) {
+            depth.putChar(i * 2, (char) sequence);
+        }
+        return frames;
+    }
+
+    @Test
+    public void concurrentReadsAreConsistent() throws Exception {
+        final Path file = Files.createTempFile("frames", ".ring");
+        final int count = 2000;
+        try (SharedFrameWriter writer = new SharedFrameWriter(file, 2, uniform(0, new FrameSet()));
+             SharedFrameReader reader = new SharedFrameReader(file)) {
+            final Thread producer = new Thread(() -> {
+                final FrameSet frames = new FrameSet();
+                for (int i = 1; i <= count; ++i) {
+                    writer.accept(uniform(i, frames));
+                }
+            });
+            producer.start();
+
+            // Ask for the slot about to be written as well as the newest one
+            final FrameSet copy = new FrameSet();
+            int consistent = 0;
+            while (producer.isAlive() || reader.latest() < count - 1) {
+                final long latest = reader.latest();
+                for (long seq = Math.max(0, latest); seq <= latest + 1; ++seq) {
+                    if (!reader.read(seq, copy)) continue;
+                    final ByteBuffer depth = copy.get(RS.stream.depth).getData();
+                    assertEquals(seq + 1, copy.getSequence());
+                    for (int i = 0; i < 320 * 240; ++i) {
+                        assertEquals((char) copy.getSequence(), depth.getChar(i * 2));
+                    }
+                    ++consistent;
+                }
+            }
+            producer.join();
+            assertTrue(consistent > 0);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void closeEndsAwait() throws Exception {
+        final Path file = Files.createTempFile("frames", ".ring");
+        try (SharedFrameReader reader = new SharedFrameReader(createAndClose(file))) {
+            assertTrue(reader.isClosed());
+            assertEquals(0, reader.latest());
+            assertEquals(-1, reader.await(0));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Path createAndClose(Path file) throws Exception {
+        final Calibration calibration = calibration();
+        try (SharedFrameWriter writer = new SharedFrameWriter(file, 2, frames(0, calibration))) {
+            writer.accept(frames(10, calibration));
+        }
+        return file;
+    }
+}
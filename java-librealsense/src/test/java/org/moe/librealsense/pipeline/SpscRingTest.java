@@ -0,0 +1,93 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SpscRingTest {
+    private static final int COUNT = 200000;
+
+    @Test
+    public void keepsOrderWhenBlocking() throws Exception {
+        final SpscRing<Integer> ring = new SpscRing<>(4);
+        final Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < COUNT; ++i) {
+                    ring.put(i);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        for (int i = 0; i < COUNT; ++i) {
+            assertEquals(Integer.valueOf(i), ring.take());
+        }
+        producer.join();
+        assertNull(ring.poll());
+    }
+
+    @Test
+    public void accountsForDroppedElements() throws Exception {
+        final SpscRing<Integer> ring = new SpscRing<>(4);
+        final long dropped[] = new long[1];
+        final Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i <= COUNT; ++i) {
+                    dropped[0] += ring.putDropOldest(i);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        int received = 0;
+        int last = -1;
+        while (last != COUNT) {
+            final int value = ring.take();
+            assertTrue(value > last);
+            last = value;
+            ++received;
+        }
+        producer.join();
+        assertEquals(COUNT + 1, received + dropped[0]);
+    }
+
+    @Test
+    public void reusesSlotsAfterPoll() throws Exception {
+        final SpscRing<String> ring = new SpscRing<>(2);
+        for (int round = 0; round < 10; ++round) {
+            assertTrue(ring.offer("a" + round));
+            assertTrue(ring.offer("b" + round));
+            assertFalse(ring.offer("c" + round));
+            assertEquals("a" + round, ring.poll());
+            assertEquals("b" + round, ring.poll());
+            assertNull(ring.poll());
+        }
+        assertEquals(1, ring.putDropOldest("x") + ring.putDropOldest("y") + ring.putDropOldest("z"));
+        assertEquals("y", ring.poll());
+        assertEquals("z", ring.poll());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void rejectsNull() {
+        new SpscRing<String>(2).offer(null);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.processing;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ChangeDetectorTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final int BLOCK = 20;
+
+    // Wall at 2 m with a 20x20 block at 1 m whose left edge is at x, rows 50 to 69
+    private static char[] frame(int x) {
+        final char depth[] = new char[WIDTH * HEIGHT];
+        Arrays.fill(depth, (char) 2000);
+        if (x >= 0) {
+            for (int y = 50; y < 50 + BLOCK; ++y) {
+                Arrays.fill(depth, y * WIDTH + x, y * WIDTH + x + BLOCK, (char) 1000);
+            }
+        }
+        // A hole in the wall is invalid depth, never a change
+        depth[10 * WIDTH + 10] = 0;
+        return depth;
+    }
+
+    private static void checkMovingBlock(ChangeDetector.Model model) {
+        final ChangeDetector serial = new ChangeDetector(WIDTH, HEIGHT, 1, 16, model);
+        final ChangeDetector parallel = new ChangeDetector(WIDTH, HEIGHT, 1, 16, model);
+        for (int i = 0; i < 5; ++i) {
+            serial.update(frame(-1));
+            parallel.updateParallel(frame(-1), 3);
+        }
+        assertEquals(0, sum(serial.getMask()));
+
+        for (int x = 0; x + BLOCK <= WIDTH; x += 7) {
+            final char depth[] = frame(x);
+            serial.update(depth);
+            parallel.updateParallel(depth, 3);
+
+            final byte mask[] = serial.getMask();
+            for (int y = 0; y < HEIGHT; ++y) {
+                for (int px = 0; px < WIDTH; ++px) {
+                    final boolean inside = y >= 50 && y < 50 + BLOCK && px >= x && px < x + BLOCK;
+                    assertEquals("pixel " + px + "," + y + " with block at " + x, inside ? 1 : 0, mask[y * WIDTH + px]);
+                }
+            }
+
+            // The tile holding the block center is the most active one
+            final float scores[] = serial.getTileScores();
+            final int center = (50 + BLOCK / 2) / 16 * serial.getTilesX() + (x + BLOCK / 2) / 16;
+            for (float score : scores) {
+                assertTrue(score <= scores[center]);
+            }
+            assertTrue(scores[center] > 0);
+
+            assertArrayEquals(mask, parallel.getMask());
+            assertArrayEquals("tile scores with block at " + x, scores, parallel.getTileScores(), 0);
+        }
+    }
+
+    private static int sum(byte mask[]) {
+        int sum = 0;
+        for (byte m : mask) sum += m;
+        return sum;
+    }
+
+    @Test
+    public void exponentialModelTracksMovingBlock() {
+        checkMovingBlock(ChangeDetector.Model.EXPONENTIAL);
+    }
+
+    @Test
+    public void medianModelTracksMovingBlock() {
+        checkMovingBlock(ChangeDetector.Model.MEDIAN);
+    }
+
+    @Test
+    public void decimatedMaskFollowsBlock() {
+        final ChangeDetector detector = new ChangeDetector(WIDTH, HEIGHT, 2, 8, ChangeDetector.Model.EXPONENTIAL);
+        detector.update(frame(-1));
+        detector.update(frame(40));
+        assertEquals(80, detector.getMaskWidth());
+        assertEquals(BLOCK / 2 * BLOCK / 2, sum(detector.getMask()));
+        assertEquals(1, detector.getMask()[30 * 80 + 25]);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+Copyright 2014-2016 Intel Corporation
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.moe.librealsense.processing;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StereoMatcherTest {
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 64;
+    private static final int MAX_DISPARITY = 24;
+    private static final int RADIUS = 2;
+
+    // Random texture, the right view of every row is the left view shifted by that row's disparity
+    private static byte[][] pair(long seed, int top_disparity, int bottom_disparity) {
+        final Random random = new Random(seed);
+        final byte left[] = new byte[WIDTH * HEIGHT];
+        final byte right[] = new byte[WIDTH * HEIGHT];
+        random.nextBytes(left);
+        for (int y = 0; y < HEIGHT; ++y) {
+            final int d = y < HEIGHT / 2 ? top_disparity : bottom_disparity;
+            for (int x = 0; x < WIDTH; ++x) {
+                right[y * WIDTH + x] = x + d < WIDTH ? left[y * WIDTH + x + d] : (byte) random.nextInt();
+            }
+        }
+        return new byte[][]{left, right};
+    }
+
+    // Fraction of the pixels of the given rows which match the disparity within half a pixel
+    private static float matched(char disparity[], int y0, int y1, int expected) {
+        int total = 0, good = 0;
+        for (int y = y0; y < y1; ++y) {
+            // Left of the search range and within the census border nothing can be matched
+            for (int x = MAX_DISPARITY + RADIUS + 2; x < WIDTH - RADIUS - 2; ++x) {
+                ++total;
+                final int error = disparity[y * WIDTH + x] - expected * StereoMatcher.SUBPIXEL;
+                if (Math.abs(error) <= StereoMatcher.SUBPIXEL / 2) {
+                    ++good;
+                }
+            }
+        }
+        return (float) good / total;
+    }
+
+    @Test
+    public void recoversUniformShift() {
+        final byte images[][] = pair(7, 9, 9);
+        final StereoMatcher matcher = new StereoMatcher(WIDTH, HEIGHT, MAX_DISPARITY, RADIUS);
+        final char disparity[] = new char[WIDTH * HEIGHT];
+        matcher.compute(images[0], images[1], disparity);
+        assertTrue(matched(disparity, RADIUS + 2, HEIGHT - RADIUS - 2, 9) > 0.95f);
+    }
+
+    @Test
+    public void separatesTwoLayers() {
+        final byte images[][] = pair(11, 5, 14);
+        final StereoMatcher matcher = new StereoMatcher(WIDTH, HEIGHT, MAX_DISPARITY, RADIUS);
+        final char disparity[] = new char[WIDTH * HEIGHT];
+        matcher.compute(images[0], images[1], disparity);
+        // Windows straddling the boundary may go either way
+        assertTrue(matched(disparity, RADIUS + 2, HEIGHT / 2 - RADIUS - 2, 5) > 0.95f);
+        assertTrue(matched(disparity, HEIGHT / 2 + RADIUS + 2, HEIGHT - RADIUS - 2, 14) > 0.95f);
+    }
+
+    @Test
+    public void parallelMatchesSerial() {
+        final byte images[][] = pair(3, 6, 17);
+        final StereoMatcher serial = new StereoMatcher(WIDTH, HEIGHT, MAX_DISPARITY, RADIUS);
+        final StereoMatcher parallel = new StereoMatcher(WIDTH, HEIGHT, MAX_DISPARITY, RADIUS);
+        final char expected[] = new char[WIDTH * HEIGHT];
+        final char actual[] = new char[WIDTH * HEIGHT];
+        serial.compute(images[0], images[1], expected);
+        for (int stripes = 2; stripes <= 5; ++stripes) {
+            parallel.computeParallel(images[0], images[1], actual, stripes);
+            assertArrayEquals("stripes " + stripes, expected, actual);
+        }
+    }
+
+    @Test
+    public void convertsDisparityToDepth() {
+        // 600 px focal length and 5 cm baseline: 10 px of disparity is 3 m
+        final char disparity[] = {0, 10 * StereoMatcher.SUBPIXEL, 30 * StereoMatcher.SUBPIXEL};
+        final char depth[] = new char[3];
+        StereoMatcher.toDepth(disparity, depth, 600, 0.05f, 0.001f);
+        assertEquals(0, depth[0]);
+        assertEquals(3000, depth[1]);
+        assertEquals(1000, depth[2]);
+    }
+}